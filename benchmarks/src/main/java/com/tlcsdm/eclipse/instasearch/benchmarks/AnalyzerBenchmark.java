@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tlcsdm.eclipse.instasearch.benchmarks.SourceTree.SourceFile;
+import com.tlcsdm.eclipse.instasearch.indexing.Field;
+import com.tlcsdm.eclipse.instasearch.indexing.FileAnalyzer;
+import com.tlcsdm.eclipse.instasearch.indexing.StorageIndexer;
+
+/**
+ * Token throughput of the analyzer used for indexing file contents
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+	@Param({ "200" })
+	public int fileCount;
+
+	private SourceTree tree;
+	private FileAnalyzer analyzer;
+
+	@Setup
+	public void setUp() {
+		tree = new SourceTree(fileCount, 300, 42);
+		analyzer = new FileAnalyzer(StorageIndexer.MIN_WORD_LENGTH);
+	}
+
+	/**
+	 * Reports tokens per second next to the number of analyzed trees
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class TokenCounter {
+		public long tokens;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			tokens = 0;
+		}
+	}
+
+	@Benchmark
+	public void analyze(TokenCounter counter) throws IOException {
+		for (SourceFile file : tree.getFiles()) {
+			try (TokenStream tokenStream = analyzer.tokenStream(Field.CONTENTS.toString(),
+					new StringReader(file.getText()))) {
+				tokenStream.reset();
+				while (tokenStream.incrementToken())
+					counter.tokens++;
+				tokenStream.end();
+			}
+		}
+	}
+}
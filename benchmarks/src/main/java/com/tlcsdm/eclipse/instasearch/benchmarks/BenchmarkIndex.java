@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.benchmarks;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.eclipse.jface.util.PropertyChangeEvent;
+
+import com.tlcsdm.eclipse.instasearch.benchmarks.SourceTree.SourceFile;
+import com.tlcsdm.eclipse.instasearch.indexing.Searcher;
+import com.tlcsdm.eclipse.instasearch.indexing.Searcher.SearcherConfig;
+import com.tlcsdm.eclipse.instasearch.indexing.StorageIndexer;
+import com.tlcsdm.eclipse.instasearch.prefs.PreferenceConstants;
+
+/**
+ * In-memory index of a source tree, as used by the benchmarks
+ */
+class BenchmarkIndex {
+
+	private final StorageIndexer indexer;
+	private final Searcher searcher;
+	private final BenchmarkConfig config;
+
+	BenchmarkIndex(SourceTree tree) throws Exception {
+		indexer = new StorageIndexer(); // in-memory directory
+		IndexWriter indexWriter = indexer.createIndexWriter(true);
+
+		try {
+			indexFiles(indexer, indexWriter, tree);
+			indexWriter.commit(); // as after a full rebuild, segments are merged in the background
+		} finally {
+			indexWriter.close();
+		}
+
+		config = new BenchmarkConfig(indexer.getIndexDir());
+		searcher = new Searcher(config);
+	}
+
+	static void indexFiles(StorageIndexer indexer, IndexWriter indexWriter, SourceTree tree) throws IOException {
+		for (SourceFile file : tree.getFiles())
+			indexer.indexStorage(indexWriter, file, SourceTree.PROJECT, 1L, null);
+	}
+
+	Searcher getSearcher() {
+		return searcher;
+	}
+
+	/**
+	 * Changes a preference of the searcher
+	 */
+	void setBoolPref(String pref, boolean value) {
+		if (value)
+			config.enabledPrefs.add(pref);
+		else
+			config.enabledPrefs.remove(pref);
+
+		searcher.propertyChange(new PropertyChangeEvent(this, pref, !value, value));
+	}
+
+	void close() throws IOException {
+		searcher.onIndexReset();
+		indexer.close();
+	}
+
+	/**
+	 * Default preferences, like a fresh installation
+	 */
+	private static class BenchmarkConfig implements SearcherConfig {
+		private final Directory dir;
+		private final Set<String> enabledPrefs = new HashSet<>();
+
+		BenchmarkConfig(Directory dir) {
+			this.dir = dir;
+			enabledPrefs.add(PreferenceConstants.P_FUZZY_SEARCH_AUTO);
+			enabledPrefs.add(PreferenceConstants.P_SHOW_MATCH_COUNT);
+		}
+
+		public Directory getIndexDir() throws IOException {
+			return dir;
+		}
+
+		public boolean getBoolPref(String pref) {
+			return enabledPrefs.contains(pref);
+		}
+
+		public void log(Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
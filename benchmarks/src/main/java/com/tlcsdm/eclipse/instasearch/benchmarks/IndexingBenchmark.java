@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tlcsdm.eclipse.instasearch.indexing.StorageIndexer;
+
+/**
+ * Documents per second of StorageIndexer.indexStorage into an in-memory index
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexingBenchmark {
+
+	private static final int FILE_COUNT = 500;
+
+	private SourceTree tree;
+	private StorageIndexer indexer;
+	private IndexWriter indexWriter;
+
+	@Setup
+	public void setUp() {
+		tree = new SourceTree(FILE_COUNT, 300, 42);
+	}
+
+	@Setup(Level.Invocation)
+	public void createIndex() throws IOException {
+		indexer = new StorageIndexer();
+		indexWriter = indexer.createIndexWriter(true);
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeIndex() throws IOException {
+		indexWriter.close();
+		indexer.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FILE_COUNT)
+	public void indexStorage() throws IOException {
+		BenchmarkIndex.indexFiles(indexer, indexWriter, tree);
+		indexWriter.commit();
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tlcsdm.eclipse.instasearch.benchmarks.SourceTree.SourceFile;
+import com.tlcsdm.eclipse.instasearch.indexing.SearchQuery;
+import com.tlcsdm.eclipse.instasearch.indexing.SearchResult;
+import com.tlcsdm.eclipse.instasearch.indexing.SearchResultDoc;
+import com.tlcsdm.eclipse.instasearch.indexing.StorageIndexer;
+
+/**
+ * Time to find the matched lines of all shown results, in the two ways
+ * ResultContentProvider does it: from the term offsets stored in the index or
+ * by analyzing every line of the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchLineBenchmark {
+
+	private static final int FILE_COUNT = 1000;
+	private static final int MAX_RESULTS = 25;
+
+	private BenchmarkIndex index;
+	private List<SearchResultDoc> resultDocs;
+	private Map<SearchResultDoc, String> docTexts;
+	private Set<String> searchTerms;
+
+	@Setup
+	public void setUp() throws Exception {
+		SourceTree tree = new SourceTree(FILE_COUNT, 300, 42);
+		index = new BenchmarkIndex(tree);
+
+		Map<String, String> texts = new HashMap<>();
+		for (SourceFile file : tree.getFiles())
+			texts.put(file.getFullPath().toString(), file.getText());
+
+		SearchResult result = index.getSearcher().search(new SearchQuery("user name", MAX_RESULTS));
+		resultDocs = result.getResultDocs();
+		searchTerms = result.getSearchTerms().keySet();
+
+		docTexts = new HashMap<>();
+		for (SearchResultDoc doc : resultDocs)
+			docTexts.put(doc, texts.get(doc.getFilePath()));
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		index.close();
+	}
+
+	@Benchmark
+	public int termOffsets() throws IOException {
+		int matchedLines = 0;
+
+		for (SearchResultDoc doc : resultDocs) {
+			int[] offsets = doc.getTermOffsets(searchTerms);
+			String text = docTexts.get(doc);
+
+			for (String line : getLinesAt(text, offsets))
+				matchedLines += countMatches(line);
+		}
+
+		return matchedLines;
+	}
+
+	@Benchmark
+	public int allLines() throws IOException {
+		int matchedLines = 0;
+
+		for (SearchResultDoc doc : resultDocs) {
+			for (String line : docTexts.get(doc).split("\n"))
+				matchedLines += countMatches(line);
+		}
+
+		return matchedLines;
+	}
+
+	private int countMatches(String line) throws IOException {
+		Map<String, List<Integer>> lineTerms = StorageIndexer.extractTextTerms(line);
+
+		for (String term : searchTerms) {
+			if (lineTerms.containsKey(term))
+				return 1;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @param offsets sorted character offsets
+	 * @return distinct lines containing the offsets
+	 */
+	private static List<String> getLinesAt(String text, int[] offsets) {
+		List<String> lines = new ArrayList<>();
+		int lineEnd = -1;
+
+		for (int offset : offsets) {
+			if (offset <= lineEnd || offset >= text.length())
+				continue;
+
+			int lineStart = text.lastIndexOf('\n', offset) + 1;
+			lineEnd = text.indexOf('\n', offset);
+			if (lineEnd == -1)
+				lineEnd = text.length();
+
+			lines.add(text.substring(lineStart, lineEnd));
+		}
+
+		return lines;
+	}
+}
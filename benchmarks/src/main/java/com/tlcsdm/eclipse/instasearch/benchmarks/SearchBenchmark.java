@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tlcsdm.eclipse.instasearch.indexing.Field;
+import com.tlcsdm.eclipse.instasearch.indexing.SearchQuery;
+import com.tlcsdm.eclipse.instasearch.indexing.SearchResult;
+import com.tlcsdm.eclipse.instasearch.indexing.Searcher;
+import com.tlcsdm.eclipse.instasearch.prefs.PreferenceConstants;
+
+/**
+ * Latency of searches and of search proposals on an index of generated files
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	/** Default of the shown results preference */
+	private static final int MAX_RESULTS = 25;
+	/** Completions shown while typing, as in ResultContentProvider */
+	private static final int MAX_PROPOSALS = 100;
+	private static final int QUERY_COUNT = 64;
+
+	@Param({ "2000" })
+	public int fileCount;
+
+	/**
+	 * exact: a single identifier, nonExact: several words, fuzzy: a misspelled
+	 * identifier, typo: a misspelled identifier searched like the user typed it,
+	 * going through all passes
+	 */
+	@Param({ "exact", "nonExact", "fuzzy", "typo" })
+	public String mode;
+
+	/** Whether the fallback passes run in parallel */
+	@Param({ "true", "false" })
+	public boolean parallel;
+
+	private BenchmarkIndex index;
+	private Searcher searcher;
+	private String[] queries;
+	private String[] prefixes;
+	private int next;
+
+	@Setup
+	public void setUp() throws Exception {
+		index = new BenchmarkIndex(new SourceTree(fileCount, 300, 42));
+		index.setBoolPref(PreferenceConstants.P_PARALLEL_SEARCH, parallel);
+		searcher = index.getSearcher();
+
+		Random random = new Random(7);
+		queries = new String[QUERY_COUNT];
+		prefixes = new String[QUERY_COUNT];
+
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			queries[i] = createQuery(random);
+			prefixes[i] = SourceTree.word(random).substring(0, 2);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		index.close();
+	}
+
+	private String createQuery(Random random) {
+		if ("nonExact".equals(mode))
+			return SourceTree.word(random) + " " + SourceTree.word(random) + " " + SourceTree.word(random);
+
+		String identifier = SourceTree.identifier(random);
+
+		if ("fuzzy".equals(mode) || "typo".equals(mode)) { // drop a letter
+			int i = 1 + random.nextInt(identifier.length() - 2);
+			return identifier.substring(0, i) + identifier.substring(i + 1);
+		}
+
+		return identifier;
+	}
+
+	@Benchmark
+	public SearchResult search() throws Exception {
+		SearchQuery searchQuery = new SearchQuery(queries[next++ % QUERY_COUNT], MAX_RESULTS);
+		searchQuery.setExact("exact".equals(mode) || "typo".equals(mode));
+		searchQuery.setFuzzy("fuzzy".equals(mode));
+
+		return searcher.search(searchQuery);
+	}
+
+	@Benchmark
+	public List<String> getProposals() throws Exception {
+		return searcher.getProposals(prefixes[next++ % QUERY_COUNT], Field.CONTENTS, MAX_PROPOSALS);
+	}
+}
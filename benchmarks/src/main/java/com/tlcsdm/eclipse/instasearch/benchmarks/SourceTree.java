@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Synthetic tree of Java-like source files. The same seed always generates the
+ * same files so that results of different runs can be compared.
+ */
+public class SourceTree {
+
+	public static final String PROJECT = "benchmark";
+
+	private static final String[] WORDS = { "user", "account", "session", "request", "response", "handler", "server",
+			"client", "config", "value", "index", "search", "query", "result", "file", "path", "name", "type", "item",
+			"list", "map", "cache", "buffer", "reader", "writer", "stream", "event", "listener", "manager", "service",
+			"factory", "builder", "parser", "token", "field", "entry", "node", "tree", "context", "state", "status",
+			"message", "error", "count", "size", "offset", "length", "start", "end", "time", "date", "id", "key", "data",
+			"model", "view", "action", "command", "job", "task" };
+
+	private static final String[] VERBS = { "get", "set", "create", "update", "delete", "find", "load", "save", "read",
+			"write", "parse", "build", "handle", "process", "validate", "init", "reset", "close", "open", "check" };
+
+	private final List<SourceFile> files;
+
+	/**
+	 * @param fileCount    number of files
+	 * @param linesPerFile approximate number of lines of each file
+	 * @param seed
+	 */
+	public SourceTree(int fileCount, int linesPerFile, long seed) {
+		Random random = new Random(seed);
+		List<SourceFile> generated = new ArrayList<>(fileCount);
+
+		for (int i = 0; i < fileCount; i++) {
+			String packageName = "com." + word(random) + "." + word(random);
+			String className = capitalize(word(random)) + capitalize(word(random)) + i;
+			String path = "/" + PROJECT + "/src/" + packageName.replace('.', '/') + "/" + className + ".java";
+
+			generated.add(new SourceFile(path, generateClass(random, packageName, className, linesPerFile)));
+		}
+
+		files = Collections.unmodifiableList(generated);
+	}
+
+	public List<SourceFile> getFiles() {
+		return files;
+	}
+
+	/**
+	 * @return a camel case identifier as it appears in the generated files, eg.
+	 *         getUserName
+	 */
+	public static String identifier(Random random) {
+		return VERBS[random.nextInt(VERBS.length)] + capitalize(word(random)) + capitalize(word(random));
+	}
+
+	/**
+	 * @return a constant name as it appears in the generated files, eg. MAX_SIZE
+	 */
+	public static String constant(Random random) {
+		return word(random).toUpperCase(Locale.ENGLISH) + "_" + word(random).toUpperCase(Locale.ENGLISH);
+	}
+
+	public static String word(Random random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	private static String generateClass(Random random, String packageName, String className, int lines) {
+		StringBuilder text = new StringBuilder(lines * 40);
+
+		text.append("package ").append(packageName).append(";\n\n");
+		text.append("import java.util.List;\n");
+		text.append("import com.").append(word(random)).append('.').append(capitalize(word(random))).append(";\n\n");
+		text.append("/**\n * The ").append(word(random)).append(' ').append(word(random)).append(" of the ")
+				.append(word(random)).append(".\n */\n");
+		text.append("public class ").append(className).append(" {\n");
+		text.append("\tprivate static final int ").append(constant(random)).append(" = ")
+				.append(random.nextInt(1000)).append(";\n\n");
+
+		int written = 8;
+		while (written < lines) {
+			String method = identifier(random);
+			text.append("\t// ").append(word(random)).append(' ').append(word(random)).append(' ')
+					.append(word(random)).append('\n');
+			text.append("\tpublic void ").append(method).append("(String ").append(word(random)).append(") {\n");
+			text.append("\t\tthis.").append(word(random)).append(capitalize(word(random))).append(" = ")
+					.append(identifier(random)).append("(").append(constant(random)).append(");\n");
+			text.append("\t\tLOG.debug(\"").append(word(random)).append(' ').append(word(random)).append(": \" + ")
+					.append(word(random)).append('.').append(identifier(random)).append("());\n");
+			text.append("\t}\n\n");
+			written += 6;
+		}
+
+		text.append("}\n");
+
+		return text.toString();
+	}
+
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+	/**
+	 * A generated file
+	 */
+	public static class SourceFile implements IStorage {
+		private final IPath path;
+		private final String contents;
+		private final byte[] bytes;
+
+		SourceFile(String path, String contents) {
+			this.path = new Path(path);
+			this.contents = contents;
+			this.bytes = contents.getBytes(StandardCharsets.UTF_8);
+		}
+
+		public String getText() {
+			return contents;
+		}
+
+		public InputStream getContents() throws CoreException {
+			return new ByteArrayInputStream(bytes); // can be indexed any number of times
+		}
+
+		public IPath getFullPath() {
+			return path;
+		}
+
+		public String getName() {
+			return path.lastSegment();
+		}
+
+		public boolean isReadOnly() {
+			return true;
+		}
+
+		public <T> T getAdapter(Class<T> adapter) {
+			return null;
+		}
+	}
+}
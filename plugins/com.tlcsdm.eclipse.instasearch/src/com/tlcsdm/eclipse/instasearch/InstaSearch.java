@@ -12,9 +12,10 @@
 package com.tlcsdm.eclipse.instasearch;
 
 import java.io.IOException;
+import java.util.List;
 
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.jobs.Job;
 
@@ -58,21 +59,16 @@ public class InstaSearch {
 		String curVer = InstaSearchPlugin.getVersion();
 		InstaSearchPlugin.getDefault().getPreferenceStore().setValue("version", curVer);
 
-		if (!indexer.isIndexed() || !indexer.isReadable() || !curVer.equals(lastVer))
+		if (!indexer.isIndexed() || !indexer.isReadable() || !indexer.isCurrentFormat())
 			createIndex();
+		else if (!curVer.equals(lastVer))
+			syncIndex(); // re-index only what changed
 		else
 			searcher.onIndexUpdate();
 
-		int indexUpdateInterval = InstaSearchPlugin.getIntPref(PreferenceConstants.P_INDEX_UPDATE_INTERVAL);
-		boolean indexUpdateEnabled = InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_UPDATE_ENABLED);
-
-		indexUpdateJob = new IndexUpdateJob(indexer, searcher);
+		indexUpdateJob = new IndexUpdateJob(indexer, searcher); // scheduled by file changes
 		indexUpdateJob.setSystem(true);
 
-		if ((indexUpdateEnabled) && (indexUpdateInterval > 0)) {
-			indexUpdateJob.schedule(indexUpdateInterval);
-		}
-
 		InstaSearchPlugin.addPreferenceChangeListener(indexUpdateJob);
 	}
 
@@ -108,12 +104,25 @@ public class InstaSearch {
 	 * 
 	 */
 	public void createIndex() {
+		scheduleIndexing(true);
+	}
+
+	/**
+	 * Starts the indexing job which updates only the files that changed since
+	 * they were indexed
+	 */
+	public void syncIndex() {
+		scheduleIndexing(false);
+	}
+
+	private void scheduleIndexing(boolean rebuild) {
 		if (indexingJob == null) {
 			indexingJob = new IndexingJob(indexer);
 			indexingJob.setPriority(Job.LONG); // long running job
 		} else if (isIndexing())
 			return;
 
+		indexingJob.setRebuild(rebuild);
 		indexingJob.schedule();
 	}
 
@@ -126,29 +135,56 @@ public class InstaSearch {
 
 	}
 
+	/**
+	 * Cancels jobs, closes the searcher and the index, committing pending changes
+	 */
+	void close() {
+		cancelJobs();
+		searcher.onIndexReset();
+
+		try {
+			indexer.close();
+		} catch (Exception e) {
+			InstaSearchPlugin.log(e);
+		}
+	}
+
 	/**
 	 * Update the index with the latest changes
 	 */
 	public void updateIndex() {
-		if (indexUpdateJob != null) {
-			indexUpdateJob.cancel();
-			indexUpdateJob.schedule();
-		}
+		if (indexUpdateJob != null)
+			indexUpdateJob.updateNow();
 	}
 
 	public SearcherConfig getSearcherConfig() {
 		return new SearcherConfig() {
 			public Directory getIndexDir() throws IOException {
-				// InstaSearchPlugin.getIndexDirLocation() returns a File -> use toPath()
-				java.io.File idxDir = InstaSearchPlugin.getIndexDirLocation();
-				// Use FSDirectory.open(Path) for Lucene 9.x
-				return FSDirectory.open(idxDir.toPath());
+				return indexer.getIndexDir(); // shared with the indexer
+			}
+
+			public IndexWriter getIndexWriter() throws IOException {
+				if (!indexer.isIndexed())
+					return null; // nothing to search yet
+
+				return indexer.getIndexWriter(); // search also uncommitted changes
+			}
+
+			public List<IndexWriter> getShardWriters() throws IOException {
+				if (!indexer.isIndexed())
+					return null;
+
+				return indexer.getShardWriters();
 			}
 
 			public boolean getBoolPref(String pref) {
 				return InstaSearchPlugin.getBoolPref(pref);
 			}
 
+			public int getSearchThreads() {
+				return Math.max(1, InstaSearchPlugin.getIntPref(PreferenceConstants.P_SEARCH_THREADS));
+			}
+
 			public void log(Exception e) {
 				InstaSearchPlugin.log(e);
 			}
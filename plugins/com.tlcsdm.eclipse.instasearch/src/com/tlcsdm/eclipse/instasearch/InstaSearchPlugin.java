@@ -72,7 +72,7 @@ public final class InstaSearchPlugin extends AbstractUIPlugin {
 	}
 
 	public void stop(BundleContext context) throws Exception {
-		instaSearch.cancelJobs();
+		instaSearch.close();
 
 		plugin = null;
 		super.stop(context);
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+
+/**
+ * Number of matching documents for each value of the filter fields (project,
+ * extension, jar). Counted from the doc values while the query is collected,
+ * so no extra queries are run per value
+ */
+public class FacetCounts {
+
+	/** Fields that are counted, they are indexed with sorted set doc values */
+	static final Field[] FIELDS = { Field.PROJ, Field.EXT, Field.JAR };
+
+	private final Map<Field, Map<String, Integer>> counts = new EnumMap<>(Field.class);
+
+	/**
+	 * @param field
+	 * @return number of matching documents by field value, empty if the field is
+	 *         not counted
+	 */
+	public Map<String, Integer> getCounts(Field field) {
+		Map<String, Integer> fieldCounts = counts.get(field);
+
+		if (fieldCounts == null)
+			return Collections.emptyMap();
+
+		return Collections.unmodifiableMap(fieldCounts);
+	}
+
+	/**
+	 * @param field
+	 * @param value
+	 * @return number of matching documents having the value
+	 */
+	public int getCount(Field field, String value) {
+		Integer count = getCounts(field).get(value);
+
+		return (count == null) ? 0 : count;
+	}
+
+	/**
+	 * Replaces the counts of a field, e.g. with the counts of a query without the
+	 * filter of that field
+	 */
+	void setCounts(Field field, Map<String, Integer> fieldCounts) {
+		counts.put(field, new HashMap<>(fieldCounts));
+	}
+
+	private void add(Field field, String value, int count) {
+		Map<String, Integer> fieldCounts = counts.get(field);
+
+		if (fieldCounts == null) {
+			fieldCounts = new HashMap<>();
+			counts.put(field, fieldCounts);
+		}
+
+		Integer previous = fieldCounts.get(value);
+		fieldCounts.put(value, (previous == null) ? count : previous + count);
+	}
+
+	/**
+	 * @return counts the values of all matching documents
+	 */
+	static CollectorManager<FacetCollector, FacetCounts> createCollectorManager() {
+		return new CollectorManager<FacetCollector, FacetCounts>() {
+			public FacetCollector newCollector() {
+				return new FacetCollector();
+			}
+
+			public FacetCounts reduce(Collection<FacetCollector> collectors) throws IOException {
+				FacetCounts facetCounts = new FacetCounts();
+
+				for (FacetCollector collector : collectors)
+					for (SegmentCounts segmentCounts : collector.segments)
+						segmentCounts.addTo(facetCounts);
+
+				return facetCounts;
+			}
+		};
+	}
+
+	/**
+	 * Counts the value ordinals of each segment. The ordinals are resolved to
+	 * values only once per segment when the counts are reduced
+	 */
+	static class FacetCollector extends SimpleCollector {
+		private final List<SegmentCounts> segments = new ArrayList<>();
+		private SegmentCounts current;
+
+		@Override
+		protected void doSetNextReader(LeafReaderContext context) throws IOException {
+			current = new SegmentCounts(context);
+			segments.add(current);
+		}
+
+		@Override
+		public void collect(int doc) throws IOException {
+			current.collect(doc);
+		}
+
+		@Override
+		public ScoreMode scoreMode() {
+			return ScoreMode.COMPLETE_NO_SCORES;
+		}
+	}
+
+	private static class SegmentCounts {
+		private final SortedSetDocValues[] docValues = new SortedSetDocValues[FIELDS.length];
+		private final int[][] ordCounts = new int[FIELDS.length][];
+
+		SegmentCounts(LeafReaderContext context) throws IOException {
+			for (int i = 0; i < FIELDS.length; i++) {
+				docValues[i] = DocValues.getSortedSet(context.reader(), FIELDS[i].toString());
+				ordCounts[i] = new int[(int) docValues[i].getValueCount()];
+			}
+		}
+
+		void collect(int doc) throws IOException {
+			for (int i = 0; i < FIELDS.length; i++) {
+				SortedSetDocValues values = docValues[i];
+
+				if (values.advanceExact(doc)) {
+					for (int j = 0; j < values.docValueCount(); j++)
+						ordCounts[i][(int) values.nextOrd()]++;
+				}
+			}
+		}
+
+		void addTo(FacetCounts facetCounts) throws IOException {
+			for (int i = 0; i < FIELDS.length; i++) {
+				int[] fieldCounts = ordCounts[i];
+
+				for (int ord = 0; ord < fieldCounts.length; ord++) {
+					if (fieldCounts[ord] != 0)
+						facetCounts.add(FIELDS[i], docValues[i].lookupOrd(ord).utf8ToString(), fieldCounts[ord]);
+				}
+			}
+		}
+	}
+}
@@ -8,7 +8,7 @@ import org.apache.lucene.index.Term;
  * Document fields for indexing and searching
  */
 public enum Field {
-	EXT("Extension"), PROJ("Project"), WS("Working Set"), CONTENTS, FILE, NAME, JAR, DIR, MODIFIED("Modified");
+	EXT("Extension"), PROJ("Project"), WS("Working Set"), CONTENTS, FILE, NAME, JAR, DIR, MODIFIED("Modified"), HASH, SUFFIX;
 
 	private String title;
 
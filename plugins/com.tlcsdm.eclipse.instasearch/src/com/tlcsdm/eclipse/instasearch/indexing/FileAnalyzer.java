@@ -20,9 +20,7 @@ import org.apache.lucene.analysis.core.LowerCaseFilter;
 import org.apache.lucene.analysis.miscellaneous.LengthFilter;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 
-import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.CamelCaseTokenizer;
-import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.DotSplitTokenizer;
-import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.WordSplitTokenizer;
+import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.WordPartTokenizer;
 import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.standard.StandardTokenizer;
 
 public class FileAnalyzer extends Analyzer {
@@ -40,9 +38,7 @@ public class FileAnalyzer extends Analyzer {
 		StandardTokenizer source = new StandardTokenizer(); // splits at ". ", etc.
 
 		TokenStream result = source;
-		result = new WordSplitTokenizer(result); // non-alphanumerics
-		result = new DotSplitTokenizer(result); // all.package.names, hyphen-separated-words
-		result = new CamelCaseTokenizer(result); // CamelCaseIdentifiers
+		result = new WordPartTokenizer(result); // non-alphanumerics, all.package.names, CamelCaseIdentifiers
 
 		result = new LengthFilter(result, minWordLength, 128);
 		result = new LowerCaseFilter(result);
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.util.Bits;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+
+/**
+ * Modification stamps and content hashes of the indexed workspace files. It is
+ * read from the doc values and stored fields of the index, so it always matches the index, and
+ * is used to re-index only the files that changed since they were indexed.
+ *
+ * Files from JARs are not part of the manifest.
+ */
+class IndexManifest {
+
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	private IndexManifest() {
+	}
+
+	/**
+	 * Reads the manifest of all live documents
+	 *
+	 * @param reader
+	 * @return IndexManifest
+	 * @throws IOException
+	 */
+	public static IndexManifest read(IndexReader reader) throws IOException {
+		IndexManifest manifest = new IndexManifest();
+		EntryVisitor visitor = new EntryVisitor();
+
+		for (LeafReaderContext context : reader.leaves()) {
+			LeafReader leafReader = context.reader();
+			StoredFields storedFields = leafReader.storedFields();
+			Bits liveDocs = leafReader.getLiveDocs();
+			NumericDocValues modified = DocValues.getNumeric(leafReader, Field.MODIFIED.toString());
+
+			for (int docId = 0; docId < leafReader.maxDoc(); docId++) {
+				if (liveDocs != null && !liveDocs.get(docId))
+					continue;
+
+				visitor.reset();
+				storedFields.document(docId, visitor);
+
+				if (visitor.filePath == null || !StorageIndexer.NO_VALUE.equals(visitor.jar))
+					continue;
+
+				long modificationStamp = modified.advanceExact(docId) ? modified.longValue() : IResource.NULL_STAMP;
+				manifest.entries.put(visitor.filePath, new Entry(modificationStamp, visitor.hash));
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Removes the entry so that only the paths of files that no longer exist
+	 * remain in the manifest after the workspace has been visited
+	 *
+	 * @param filePath full path of the file in the workspace
+	 * @return the entry or null if the file is not indexed
+	 */
+	public Entry remove(String filePath) {
+		return entries.remove(filePath);
+	}
+
+	/**
+	 * @return paths of the files that have not been removed
+	 */
+	public Collection<String> getPaths() {
+		return entries.keySet();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Indexed state of a single file
+	 */
+	public static class Entry {
+		private final long modificationStamp;
+		private final String hash;
+
+		private Entry(long modificationStamp, String hash) {
+			this.modificationStamp = modificationStamp;
+			this.hash = hash;
+		}
+
+		/**
+		 * @param file
+		 * @return whether the file has the modification stamp it was indexed with
+		 */
+		public boolean isStampUnchanged(IFile file) {
+			return modificationStamp != IResource.NULL_STAMP && modificationStamp == file.getLocalTimeStamp();
+		}
+
+		/**
+		 * Compares the contents, for files whose stamp changed without changing
+		 * the contents, e.g. after a checkout that touched the file
+		 *
+		 * @param file
+		 * @return whether the file has the contents it was indexed with. False if
+		 *         the file was too large to be hashed
+		 */
+		public boolean isContentUnchanged(IFile file) {
+			if (hash == null)
+				return false;
+
+			try {
+				return hash.equals(StorageIndexer.getContentHash(file));
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+
+	private static class EntryVisitor extends StoredFieldVisitor {
+		private static final String FILE = Field.FILE.toString();
+		private static final String HASH = Field.HASH.toString();
+		private static final String JAR = Field.JAR.toString();
+
+		private String filePath;
+		private String hash;
+		private String jar;
+
+		void reset() {
+			filePath = null;
+			hash = null;
+			jar = null;
+		}
+
+		@Override
+		public Status needsField(FieldInfo fieldInfo) throws IOException {
+			String name = fieldInfo.name;
+
+			if (FILE.equals(name) || HASH.equals(name) || JAR.equals(name))
+				return Status.YES;
+
+			return Status.NO;
+		}
+
+		@Override
+		public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+			String name = fieldInfo.name;
+
+			if (FILE.equals(name))
+				filePath = value;
+			else if (HASH.equals(name))
+				hash = value;
+			else if (JAR.equals(name))
+				jar = value;
+		}
+	}
+}
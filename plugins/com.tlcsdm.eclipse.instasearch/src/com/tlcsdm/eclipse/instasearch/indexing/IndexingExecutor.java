@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Runs indexing tasks on a pool of worker threads which all feed the same
+ * IndexWriter. Files are submitted by a single producer thread (the indexing
+ * job) which is also the only thread that talks to the progress monitor.
+ *
+ * The work queue is bounded so the producer cannot run far ahead of the
+ * workers. When the queue is full the producer indexes the file itself.
+ */
+class IndexingExecutor {
+
+	private static final int QUEUED_TASKS_PER_THREAD = 64;
+	private static final long POLL_INTERVAL_MS = 100;
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private final AtomicInteger indexedCount = new AtomicInteger();
+
+	/**
+	 * @param threadCount number of worker threads. With 1 or less tasks are run
+	 *                    on the calling thread
+	 */
+	public IndexingExecutor(int threadCount) {
+		if (threadCount <= 1) {
+			executor = null;
+			return;
+		}
+
+		executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threadCount * QUEUED_TASKS_PER_THREAD), new IndexingThreadFactory(),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Schedules the task. Re-throws the first failure of a previously run task
+	 * so that the producer stops walking the workspace.
+	 *
+	 * @param task
+	 * @throws Exception
+	 */
+	public void submit(final IndexingTask task) throws Exception {
+		checkFailure();
+
+		if (executor == null) {
+			task.run();
+			indexedCount.incrementAndGet();
+			return;
+		}
+
+		executor.execute(new Runnable() {
+			public void run() {
+				if (failure.get() != null)
+					return;
+
+				try {
+					task.run();
+					indexedCount.incrementAndGet();
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits until all submitted tasks have completed. If the monitor gets
+	 * canceled, tasks that have not started yet are discarded. Running tasks are
+	 * not interrupted since an interrupt would close the index files under the
+	 * IndexWriter.
+	 *
+	 * @param monitor
+	 * @throws Exception the first failure of a task
+	 */
+	public void finish(IProgressMonitor monitor) throws Exception {
+		if (executor != null) {
+			executor.shutdown();
+
+			while (!executor.awaitTermination(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+				if (monitor.isCanceled() || failure.get() != null)
+					executor.getQueue().clear();
+			}
+		}
+
+		checkFailure();
+	}
+
+	/**
+	 * @return number of tasks that completed successfully
+	 */
+	public int getIndexedCount() {
+		return indexedCount.get();
+	}
+
+	private void checkFailure() throws Exception {
+		Throwable e = failure.get();
+
+		if (e == null)
+			return;
+
+		if (executor != null)
+			executor.getQueue().clear();
+
+		if (e instanceof Exception)
+			throw (Exception) e;
+		else if (e instanceof Error)
+			throw (Error) e;
+		else
+			throw new Exception(e);
+	}
+
+	/**
+	 * Unit of indexing work, usually a single file
+	 */
+	public interface IndexingTask {
+		public void run() throws Exception;
+	}
+
+	private static class IndexingThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "InstaSearch Indexer #" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	}
+}
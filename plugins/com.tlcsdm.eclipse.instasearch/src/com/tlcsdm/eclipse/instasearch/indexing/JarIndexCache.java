@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SlowCodecReaderWrapper;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+/**
+ * Indexes of JAR source attachments shared by all workspaces of the user. Each
+ * JAR is indexed once into a folder named by the hash of the JAR, its source
+ * attachment and the index settings. Workspaces add the cached index to their
+ * own index instead of extracting and analyzing the sources again.
+ *
+ * Indexes are built in a temporary folder and renamed when complete, so that
+ * other workspaces never see a partial index.
+ */
+class JarIndexCache {
+
+	/** Cached indexes not used for this long are deleted */
+	private static final long MAX_UNUSED_MILLIS = TimeUnit.DAYS.toMillis(90);
+	/** Temporary folders older than this are left from builds that didn't finish */
+	private static final long MAX_BUILD_MILLIS = TimeUnit.DAYS.toMillis(1);
+	private static final String KEY_ALGORITHM = "SHA-1";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File location;
+
+	/**
+	 * @param location folder of the cached indexes
+	 */
+	JarIndexCache(File location) {
+		this.location = location;
+	}
+
+	/**
+	 * @return folder of the cache in the user's home
+	 */
+	static File getDefaultLocation() {
+		return new File(new File(System.getProperty("user.home"), ".instasearch"), "jars");
+	}
+
+	/**
+	 * @param settings everything else the indexed documents depend on
+	 * @param files    JAR and source attachment
+	 * @return hash of the settings and the file contents
+	 * @throws IOException
+	 */
+	static String getKey(String settings, File... files) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(KEY_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JRE has SHA-1
+		}
+
+		digest.update(settings.getBytes(StandardCharsets.UTF_8));
+
+		for (File file : files) {
+			try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+				in.transferTo(OutputStream.nullOutputStream()); // digested while reading
+			}
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * @param key
+	 * @return folder of the cached index or null if the JAR hasn't been indexed
+	 */
+	File get(String key) {
+		File indexDir = new File(location, key);
+		String[] files = indexDir.list();
+
+		if (files == null || SegmentInfos.getLastCommitGeneration(files) == -1)
+			return null;
+
+		indexDir.setLastModified(System.currentTimeMillis()); // still used, see prune()
+		return indexDir;
+	}
+
+	/**
+	 * Builds the index of a JAR and stores it in the cache
+	 *
+	 * @param key
+	 * @param config  of the index writer
+	 * @param builder
+	 * @return folder of the cached index or null if building was canceled
+	 * @throws Exception
+	 */
+	File put(String key, IndexWriterConfig config, IndexBuilder builder) throws Exception {
+		location.mkdirs();
+
+		File tempDir = Files.createTempDirectory(location.toPath(), key + TEMP_SUFFIX).toFile();
+		File indexDir = new File(location, key);
+
+		try {
+			try (Directory dir = FSDirectory.open(tempDir.toPath()); IndexWriter writer = new IndexWriter(dir, config)) {
+				if (!builder.build(writer)) {
+					writer.rollback();
+					return null;
+				}
+				writer.commit();
+			}
+
+			try {
+				Files.move(tempDir.toPath(), indexDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) { // built by another workspace in the meantime
+				if (get(key) == null)
+					throw e;
+			}
+
+			return indexDir;
+		} finally {
+			deleteRecursively(tempDir); // gone if it was moved
+		}
+	}
+
+	/**
+	 * Adds the documents of a cached index to the index of the writer. The cached
+	 * index is only read, so several workspaces can add it at the same time
+	 *
+	 * @param writer
+	 * @param indexDir
+	 * @throws IOException
+	 */
+	static void addIndex(IndexWriter writer, File indexDir) throws IOException {
+		try (Directory dir = FSDirectory.open(indexDir.toPath()); DirectoryReader reader = DirectoryReader.open(dir)) {
+			List<LeafReaderContext> leaves = reader.leaves();
+			CodecReader[] segments = new CodecReader[leaves.size()];
+
+			for (int i = 0; i < segments.length; i++)
+				segments[i] = SlowCodecReaderWrapper.wrap(leaves.get(i).reader()); // returned as is if a segment
+
+			writer.addIndexes(segments);
+		}
+	}
+
+	/**
+	 * Deletes the indexes that no workspace used for a long time and leftovers
+	 * of builds that didn't finish
+	 */
+	void prune() {
+		File[] indexDirs = location.listFiles();
+
+		if (indexDirs == null)
+			return;
+
+		long now = System.currentTimeMillis();
+
+		for (File indexDir : indexDirs) {
+			long unused = now - indexDir.lastModified();
+			boolean unfinished = indexDir.getName().contains(TEMP_SUFFIX) && unused > MAX_BUILD_MILLIS;
+
+			if (unfinished || unused > MAX_UNUSED_MILLIS)
+				deleteRecursively(indexDir);
+		}
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+
+		if (children != null)
+			for (File child : children)
+				deleteRecursively(child);
+
+		file.delete();
+	}
+
+	/**
+	 * Indexes the files of a JAR
+	 */
+	interface IndexBuilder {
+		/**
+		 * @param writer of the cached index
+		 * @return false if canceled, the index is not cached
+		 * @throws Exception
+		 */
+		boolean build(IndexWriter writer) throws Exception;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.MergePolicy.OneMerge;
+
+/**
+ * Counters of the segment merges of an index, kept across index writers
+ */
+public class MergeStats {
+
+	/** At most this many merges run at once, each on its own thread */
+	private static final int MAX_MERGE_THREADS = 1;
+	private static final int MAX_MERGES = 2;
+
+	private final AtomicLong mergeCount = new AtomicLong();
+	private final AtomicLong mergedBytes = new AtomicLong();
+	private final AtomicLong mergeNanos = new AtomicLong();
+	private final AtomicLong compactionCount = new AtomicLong();
+	private volatile double ioRateLimit = Double.POSITIVE_INFINITY;
+
+	/**
+	 * @return number of finished merges
+	 */
+	public long getMergeCount() {
+		return mergeCount.get();
+	}
+
+	/**
+	 * @return size of the segments that were merged
+	 */
+	public long getMergedBytes() {
+		return mergedBytes.get();
+	}
+
+	/**
+	 * @return total time spent merging
+	 */
+	public long getMergeTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(mergeNanos.get());
+	}
+
+	/**
+	 * @return number of times the index was compacted because it had too many
+	 *         segments or deleted documents
+	 */
+	public long getCompactionCount() {
+		return compactionCount.get();
+	}
+
+	/**
+	 * @return current write rate limit of merges in MB/s, infinite if not
+	 *         throttled
+	 */
+	public double getIORateLimitMBPerSec() {
+		return ioRateLimit;
+	}
+
+	void onCompaction() {
+		compactionCount.incrementAndGet();
+	}
+
+	/**
+	 * @return scheduler running the merges of a writer in the background
+	 */
+	ConcurrentMergeScheduler createMergeScheduler() {
+		return new CountingMergeScheduler();
+	}
+
+	@Override
+	public String toString() {
+		return "merges=" + getMergeCount() + ", mergedMB=" + (getMergedBytes() >> 20) + ", mergeMillis="
+				+ getMergeTimeMillis() + ", compactions=" + getCompactionCount() + ", ioRateLimitMB="
+				+ getIORateLimitMBPerSec();
+	}
+
+	/**
+	 * Runs merges on a background thread with their writes throttled, so that
+	 * they don't compete with indexing and searching, and counts them
+	 */
+	private class CountingMergeScheduler extends ConcurrentMergeScheduler {
+
+		CountingMergeScheduler() {
+			setMaxMergesAndThreads(MAX_MERGES, MAX_MERGE_THREADS);
+			enableAutoIOThrottle();
+		}
+
+		@Override
+		protected void doMerge(MergeSource mergeSource, OneMerge merge) throws IOException {
+			long start = System.nanoTime();
+
+			try {
+				super.doMerge(mergeSource, merge);
+			} finally {
+				mergeNanos.addAndGet(System.nanoTime() - start);
+				mergedBytes.addAndGet(merge.totalBytesSize());
+				mergeCount.incrementAndGet();
+				ioRateLimit = getIORateLimitMBPerSec();
+			}
+		}
+	}
+}
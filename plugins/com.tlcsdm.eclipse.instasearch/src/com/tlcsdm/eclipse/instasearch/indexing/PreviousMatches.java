@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.ScorerSupplier;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
+
+/**
+ * Documents that matched the previous query of each search pass. While typing,
+ * the query mostly grows (Index, IndexW, IndexWr) and the new query can only
+ * match documents that the previous one matched. It is then evaluated only
+ * against those documents instead of the whole index.
+ *
+ * Whether a query is such a refinement is decided from the structure of both
+ * queries before their terms are expanded. Term queries of the new query that
+ * are not covered by the previous query (eg. name:IndexWr) are looked up in the
+ * whole index since that is cheap.
+ */
+class PreviousMatches {
+
+	static final int PASS_COUNT = 3;
+
+	private final Entry[] entries = new Entry[PASS_COUNT];
+
+	/**
+	 * @return index of the pass in the order the passes run
+	 */
+	static int getPass(boolean exact, boolean fuzzy) {
+		if (fuzzy)
+			return 2;
+
+		return exact ? 0 : 1;
+	}
+
+	/**
+	 * Restricts the query to the previous matches of the pass if it is a
+	 * refinement of the previous query
+	 *
+	 * @param pass
+	 * @param reader
+	 * @param query  the query before its terms are expanded
+	 * @param rewrittenQuery the query to search with
+	 * @return query to search with or null if it can't match anything
+	 */
+	Query restrict(int pass, IndexReader reader, Query query, Query rewrittenQuery) {
+		Entry entry = get(pass, reader);
+
+		if (entry == null)
+			return rewrittenQuery;
+
+		List<Query> uncovered = getUncovered(query, entry.query);
+
+		if (uncovered == null || uncovered.size() == countDisjuncts(query)) // nothing to narrow down
+			return rewrittenQuery;
+
+		if (uncovered.isEmpty() && entry.matches.cardinality() == 0)
+			return null;
+
+		BooleanQuery.Builder candidates = new BooleanQuery.Builder();
+		candidates.add(new DocSetQuery(entry.matches), Occur.SHOULD);
+		for (Query uncoveredQuery : uncovered)
+			candidates.add(uncoveredQuery, Occur.SHOULD);
+
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(rewrittenQuery, Occur.MUST);
+		builder.add(candidates.build(), Occur.FILTER); // does not change scores
+
+		return builder.build();
+	}
+
+	/**
+	 * Remembers the matches of a pass to narrow down the next search
+	 *
+	 * @param pass
+	 * @param reader
+	 * @param query   the query before its terms are expanded
+	 * @param matches all documents that matched
+	 */
+	synchronized void put(int pass, IndexReader reader, Query query, FixedBitSet matches) {
+		IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+
+		if (cacheHelper != null)
+			entries[pass] = new Entry(cacheHelper.getKey(), query, matches);
+	}
+
+	synchronized void clear() {
+		for (int i = 0; i < entries.length; i++)
+			entries[i] = null;
+	}
+
+	private synchronized Entry get(int pass, IndexReader reader) {
+		Entry entry = entries[pass];
+		IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+
+		if (entry == null || cacheHelper == null || entry.readerKey != cacheHelper.getKey())
+			return null; // document ids change when the reader changes
+
+		return entry;
+	}
+
+	/**
+	 * @return collects all matching documents into a bit set
+	 */
+	static CollectorManager<MatchCollector, FixedBitSet> createMatchCollectorManager(final int maxDoc) {
+		return new CollectorManager<MatchCollector, FixedBitSet>() {
+			public MatchCollector newCollector() {
+				return new MatchCollector(maxDoc);
+			}
+
+			public FixedBitSet reduce(Collection<MatchCollector> collectors) {
+				FixedBitSet matches = new FixedBitSet(maxDoc);
+
+				for (MatchCollector collector : collectors)
+					matches.or(collector.matches);
+
+				return matches;
+			}
+		};
+	}
+
+	/**
+	 * Returns the term queries of query which may match documents that other
+	 * doesn't match
+	 *
+	 * @return the term queries or null if query may match other documents
+	 */
+	static List<Query> getUncovered(Query query, Query other) {
+		if (isSubset(query, other))
+			return Collections.emptyList();
+
+		query = unwrap(query);
+
+		if (query instanceof TermQuery)
+			return Collections.singletonList(query);
+
+		if (query instanceof BooleanQuery booleanQuery && isDisjunction(booleanQuery)) {
+			List<Query> uncovered = new ArrayList<>();
+
+			for (BooleanClause clause : booleanQuery.clauses()) {
+				List<Query> clauseUncovered = getUncovered(clause.query(), other);
+
+				if (clauseUncovered == null)
+					return null;
+
+				uncovered.addAll(clauseUncovered);
+			}
+
+			return uncovered;
+		}
+
+		return null;
+	}
+
+	private static int countDisjuncts(Query query) {
+		query = unwrap(query);
+
+		if (!(query instanceof BooleanQuery booleanQuery && isDisjunction(booleanQuery)))
+			return 1;
+
+		int count = 0;
+		for (BooleanClause clause : booleanQuery.clauses())
+			count += countDisjuncts(clause.query());
+
+		return count;
+	}
+
+	/**
+	 * @return true if query can only match documents that other matches
+	 */
+	static boolean isSubset(Query query, Query other) {
+		query = unwrap(query);
+		other = unwrap(other);
+
+		if (query.equals(other))
+			return true;
+
+		if (query instanceof BooleanQuery booleanQuery && isDisjunction(booleanQuery)) {
+			for (BooleanClause clause : booleanQuery.clauses()) {
+				if (!isSubset(clause.query(), other))
+					return false;
+			}
+			return true;
+		}
+
+		if (other instanceof BooleanQuery otherQuery) {
+			if (isDisjunction(otherQuery)) {
+				for (BooleanClause clause : otherQuery.clauses()) {
+					if (isSubset(query, clause.query()))
+						return true;
+				}
+			} else if (isConjunction(otherQuery) && isSubsetOfAll(query, otherQuery)) {
+				return true;
+			}
+		}
+
+		if (query instanceof BooleanQuery booleanQuery && isConjunction(booleanQuery)) {
+			for (BooleanClause clause : booleanQuery.clauses()) {
+				if (clause.isRequired() && isSubset(clause.query(), other))
+					return true;
+			}
+		}
+
+		return isTermSubset(query, other);
+	}
+
+	/**
+	 * @return true if query matches within all required clauses of other and
+	 *         excludes the same documents
+	 */
+	private static boolean isSubsetOfAll(Query query, BooleanQuery other) {
+		for (BooleanClause clause : other.clauses()) {
+			if (clause.isRequired() && !isSubset(query, clause.query()))
+				return false;
+
+			if (clause.isProhibited() && !(query instanceof BooleanQuery booleanQuery
+					&& booleanQuery.clauses().contains(clause)))
+				return false;
+		}
+
+		return true;
+	}
+
+	private static boolean isTermSubset(Query query, Query other) {
+		Term term = getTerm(query);
+		Term otherTerm = getTerm(other);
+
+		if (term == null || otherTerm == null || !term.field().equals(otherTerm.field()))
+			return false;
+
+		try {
+			Automaton outside = Operations.minus(toAutomaton(query), toAutomaton(other),
+					Operations.DEFAULT_DETERMINIZE_WORK_LIMIT);
+
+			return Operations.isEmpty(outside);
+
+		} catch (TooComplexToDeterminizeException e) {
+			return false;
+		}
+	}
+
+	private static Term getTerm(Query query) {
+		if (query instanceof TermQuery termQuery)
+			return termQuery.getTerm();
+		if (query instanceof PrefixQuery prefixQuery)
+			return prefixQuery.getPrefix();
+		if (query instanceof WildcardQuery wildcardQuery)
+			return wildcardQuery.getTerm();
+
+		return null;
+	}
+
+	/**
+	 * @return automaton accepting the terms matched by a term, prefix or wildcard
+	 *         query
+	 */
+	private static Automaton toAutomaton(Query query) {
+		Term term = getTerm(query);
+
+		if (query instanceof PrefixQuery)
+			return Operations.concatenate(Automata.makeString(term.text()), Automata.makeAnyString());
+		if (query instanceof WildcardQuery)
+			return WildcardQuery.toAutomaton(term, Operations.DEFAULT_DETERMINIZE_WORK_LIMIT);
+
+		return Automata.makeString(term.text());
+	}
+
+	private static Query unwrap(Query query) {
+		while (true) {
+			if (query instanceof BoostQuery boostQuery)
+				query = boostQuery.getQuery();
+			else if (query instanceof ConstantScoreQuery constantScoreQuery)
+				query = constantScoreQuery.getQuery();
+			else
+				return query;
+		}
+	}
+
+	private static boolean isDisjunction(BooleanQuery query) {
+		if (query.getMinimumNumberShouldMatch() != 0)
+			return false;
+
+		for (BooleanClause clause : query.clauses()) {
+			if (clause.occur() != Occur.SHOULD)
+				return false;
+		}
+
+		return true;
+	}
+
+	private static boolean isConjunction(BooleanQuery query) {
+		if (query.getMinimumNumberShouldMatch() != 0)
+			return false;
+
+		for (BooleanClause clause : query.clauses()) {
+			if (clause.isRequired())
+				return true;
+		}
+
+		return false;
+	}
+
+	private static class Entry {
+		private final Object readerKey;
+		private final Query query;
+		private final FixedBitSet matches;
+
+		Entry(Object readerKey, Query query, FixedBitSet matches) {
+			this.readerKey = readerKey;
+			this.query = query;
+			this.matches = matches;
+		}
+	}
+
+	/**
+	 * Sets the bits of matching documents over the whole index
+	 */
+	static class MatchCollector extends SimpleCollector {
+		private final FixedBitSet matches;
+		private int docBase;
+
+		MatchCollector(int maxDoc) {
+			matches = new FixedBitSet(maxDoc);
+		}
+
+		@Override
+		protected void doSetNextReader(LeafReaderContext context) {
+			docBase = context.docBase;
+		}
+
+		@Override
+		public void collect(int doc) {
+			matches.set(docBase + doc);
+		}
+
+		@Override
+		public ScoreMode scoreMode() {
+			return ScoreMode.COMPLETE_NO_SCORES;
+		}
+	}
+
+	/**
+	 * Matches the documents of a bit set over the whole index
+	 */
+	private static class DocSetQuery extends Query {
+		private final FixedBitSet docs;
+		private final int cardinality;
+
+		DocSetQuery(FixedBitSet docs) {
+			this.docs = docs;
+			this.cardinality = docs.cardinality();
+		}
+
+		@Override
+		public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+			return new ConstantScoreWeight(this, boost) {
+				@Override
+				public ScorerSupplier scorerSupplier(LeafReaderContext context) {
+					DocIdSetIterator iterator = new LeafIterator(context.docBase, context.reader().maxDoc());
+					return new DefaultScorerSupplier(new ConstantScoreScorer(score(), scoreMode, iterator));
+				}
+
+				@Override
+				public boolean isCacheable(LeafReaderContext context) {
+					return false;
+				}
+			};
+		}
+
+		@Override
+		public void visit(org.apache.lucene.search.QueryVisitor visitor) {
+			visitor.visitLeaf(this);
+		}
+
+		@Override
+		public String toString(String field) {
+			return "DocSetQuery(" + cardinality + ")";
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return sameClassAs(obj) && docs == ((DocSetQuery) obj).docs;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(docs);
+		}
+
+		/**
+		 * Iterates the documents of one segment
+		 */
+		private class LeafIterator extends DocIdSetIterator {
+			private final int docBase;
+			private final int maxDoc;
+			private int doc = -1;
+
+			LeafIterator(int docBase, int maxDoc) {
+				this.docBase = docBase;
+				this.maxDoc = maxDoc;
+			}
+
+			@Override
+			public int docID() {
+				return doc;
+			}
+
+			@Override
+			public int nextDoc() throws IOException {
+				return advance(doc + 1);
+			}
+
+			@Override
+			public int advance(int target) throws IOException {
+				int next = (target < maxDoc) ? docs.nextSetBit(docBase + target) : NO_MORE_DOCS;
+
+				if (next == NO_MORE_DOCS || next >= docBase + maxDoc)
+					return doc = NO_MORE_DOCS;
+
+				return doc = next - docBase;
+			}
+
+			@Override
+			public long cost() {
+				return Math.min(cardinality, maxDoc);
+			}
+		}
+	}
+}
@@ -17,9 +17,7 @@ import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.core.KeywordTokenizer;
 import org.apache.lucene.analysis.miscellaneous.LengthFilter;
 
-import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.CamelCaseTokenizer;
-import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.DotSplitTokenizer;
-import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.WordSplitTokenizer;
+import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.WordPartTokenizer;
 import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.standard.StandardTokenizer;
 
 /**
@@ -31,7 +29,7 @@ public class QueryAnalyzer extends Analyzer {
 	private int minWordLength;
 
 	public QueryAnalyzer(int minWordLength) {
-		super();
+		super(PER_FIELD_REUSE_STRATEGY); // components differ by field
 
 		this.minWordLength = minWordLength;
 	}
@@ -42,9 +40,7 @@ public class QueryAnalyzer extends Analyzer {
 			StandardTokenizer source = new StandardTokenizer(); // splits at ". ", "-"
 
 			TokenStream result = source;
-			result = new WordSplitTokenizer(result); // non-alphanumerics
-			result = new DotSplitTokenizer(result); // com.package.names
-			result = new CamelCaseTokenizer(result); // CamelCaseIdentifiers
+			result = new WordPartTokenizer(result); // non-alphanumerics, all.package.names, CamelCaseIdentifiers
 
 			result = new LengthFilter(result, minWordLength, MAX_WORD_LENGTH);
 
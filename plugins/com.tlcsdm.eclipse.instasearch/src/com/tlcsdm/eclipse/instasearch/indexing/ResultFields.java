@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+import org.eclipse.core.resources.IResource;
+
+/**
+ * Reads the fields shown in the search results from doc values instead of
+ * loading the stored documents. Values repeated by many results (project,
+ * extension, jar) are shared between the result documents.
+ *
+ * Match counts are the frequencies of the search terms in the contents, read
+ * from the postings while going through the hits in document order
+ */
+class ResultFields {
+
+	private final Searcher searcher;
+	private final List<LeafReaderContext> leaves;
+	private final Map<String, String> values = new HashMap<>();
+	private final Term[] matchTerms;
+
+	/**
+	 * @param searcher
+	 * @param reader
+	 * @param matchTerms terms of contents to count or null to not count matches
+	 */
+	ResultFields(Searcher searcher, IndexReader reader, Collection<String> matchTerms) {
+		this.searcher = searcher;
+		this.leaves = reader.leaves();
+		this.matchTerms = new Term[(matchTerms == null) ? 0 : matchTerms.size()];
+
+		int i = 0;
+		if (matchTerms != null)
+			for (String term : matchTerms)
+				this.matchTerms[i++] = Field.CONTENTS.createTerm(term);
+	}
+
+	/**
+	 * @param hits
+	 * @return result documents of the hits, in the same order
+	 * @throws IOException
+	 */
+	SearchResultDoc[] load(final ScoreDoc[] hits) throws IOException {
+		Integer[] order = new Integer[hits.length];
+		for (int i = 0; i < hits.length; i++)
+			order[i] = i;
+
+		Arrays.sort(order, new Comparator<Integer>() { // doc values are read forward only
+			public int compare(Integer i1, Integer i2) {
+				return Integer.compare(hits[i1].doc, hits[i2].doc);
+			}
+		});
+
+		SearchResultDoc[] resultDocs = new SearchResultDoc[hits.length];
+		LeafFields leafFields = null;
+		int leafIndex = -1;
+
+		for (int i : order) {
+			int docId = hits[i].doc;
+
+			while (leafFields == null || docId >= leafFields.end)
+				leafFields = new LeafFields(leaves.get(++leafIndex));
+
+			resultDocs[i] = leafFields.createResultDoc(docId, hits[i].score);
+		}
+
+		return resultDocs;
+	}
+
+	private String getValue(SortedSetDocValues docValues, String[] ordValues, int doc) throws IOException {
+		if (!docValues.advanceExact(doc))
+			return null;
+
+		int ord = (int) docValues.nextOrd();
+
+		if (ordValues[ord] == null) {
+			String value = docValues.lookupOrd(ord).utf8ToString();
+			String shared = values.putIfAbsent(value, value);
+
+			ordValues[ord] = (shared == null) ? value : shared;
+		}
+
+		return ordValues[ord];
+	}
+
+	/**
+	 * Doc values of one segment
+	 */
+	private class LeafFields {
+		private final int docBase;
+		private final int end;
+		private final BinaryDocValues file;
+		private final SortedSetDocValues proj, ext, jar;
+		private final String[] projValues, extValues, jarValues;
+		private final NumericDocValues modified;
+		private final PostingsEnum[] postings = new PostingsEnum[matchTerms.length];
+
+		LeafFields(LeafReaderContext context) throws IOException {
+			LeafReader reader = context.reader();
+
+			docBase = context.docBase;
+			end = docBase + reader.maxDoc();
+			file = DocValues.getBinary(reader, Field.FILE.toString());
+			proj = DocValues.getSortedSet(reader, Field.PROJ.toString());
+			ext = DocValues.getSortedSet(reader, Field.EXT.toString());
+			jar = DocValues.getSortedSet(reader, Field.JAR.toString());
+			modified = DocValues.getNumeric(reader, Field.MODIFIED.toString());
+
+			projValues = new String[(int) proj.getValueCount()];
+			extValues = new String[(int) ext.getValueCount()];
+			jarValues = new String[(int) jar.getValueCount()];
+
+			for (int i = 0; i < matchTerms.length; i++) // null if the segment doesn't have the term
+				postings[i] = reader.postings(matchTerms[i], PostingsEnum.FREQS);
+		}
+
+		SearchResultDoc createResultDoc(int docId, float score) throws IOException {
+			int doc = docId - docBase;
+			String filePath = file.advanceExact(doc) ? file.binaryValue().utf8ToString() : null;
+			long modificationStamp = modified.advanceExact(doc) ? modified.longValue() : IResource.NULL_STAMP;
+
+			SearchResultDoc resultDoc = new SearchResultDoc(searcher, docId, score, filePath,
+					getValue(proj, projValues, doc), getValue(ext, extValues, doc), getValue(jar, jarValues, doc),
+					modificationStamp);
+
+			resultDoc.setMatchCount(getMatchCount(doc));
+
+			return resultDoc;
+		}
+
+		/**
+		 * @return sum of the frequencies of the match terms in the document
+		 */
+		private int getMatchCount(int doc) throws IOException {
+			int freqSum = 0;
+
+			for (PostingsEnum termPostings : postings) {
+				if (termPostings == null || termPostings.docID() == DocIdSetIterator.NO_MORE_DOCS)
+					continue;
+
+				if (termPostings.docID() < doc)
+					termPostings.advance(doc);
+
+				if (termPostings.docID() == doc)
+					freqSum += termPostings.freq();
+			}
+
+			return freqSum;
+		}
+	}
+}
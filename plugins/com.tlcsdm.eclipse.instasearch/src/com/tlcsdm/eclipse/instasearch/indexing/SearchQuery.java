@@ -27,7 +27,7 @@ public class SearchQuery {
 	private int maxResults = UNLIMITED_RESULTS;
 	private boolean exact = true;
 	private boolean fuzzy = false;
-	private boolean canceled = false;
+	private volatile boolean canceled = false; // set from another thread
 	private String currentProject;
 	private Map<Field, Set<String>> filter;
 
@@ -42,6 +42,7 @@ public class SearchQuery {
 	}
 
 	/**
+	 * Copies the query. The copy is not canceled
 	 * 
 	 * @param searchQuery
 	 */
@@ -50,6 +51,8 @@ public class SearchQuery {
 		this.maxResults = searchQuery.maxResults;
 		this.fuzzy = searchQuery.fuzzy;
 		this.exact = searchQuery.exact;
+		this.currentProject = searchQuery.currentProject;
+		this.filter = searchQuery.filter;
 	}
 
 	/**
@@ -22,11 +22,18 @@ public class SearchResult {
 	private List<SearchResultDoc> resultDocs;
 	private Map<String, Float> searchTerms;
 	private SearchQuery query;
+	private FacetCounts facetCounts;
 
 	public SearchResult(SearchQuery searchQuery, List<SearchResultDoc> resultDocs, Map<String, Float> searchTerms) {
+		this(searchQuery, resultDocs, searchTerms, new FacetCounts());
+	}
+
+	public SearchResult(SearchQuery searchQuery, List<SearchResultDoc> resultDocs, Map<String, Float> searchTerms,
+			FacetCounts facetCounts) {
 		this.query = searchQuery;
 		this.resultDocs = resultDocs;
 		this.searchTerms = searchTerms;
+		this.facetCounts = facetCounts;
 	}
 
 	public boolean isEmpty() {
@@ -48,6 +55,14 @@ public class SearchResult {
 		return searchTerms;
 	}
 
+	/**
+	 * @return number of all matching documents (not only the returned ones) per
+	 *         project, extension and jar
+	 */
+	public FacetCounts getFacetCounts() {
+		return facetCounts;
+	}
+
 	public boolean isFull() {
 		return resultDocs.size() == query.getMaxResults();
 	}
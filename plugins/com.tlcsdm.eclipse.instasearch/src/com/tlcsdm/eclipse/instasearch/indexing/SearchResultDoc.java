@@ -13,18 +13,11 @@ package com.tlcsdm.eclipse.instasearch.indexing;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.PostingsEnum;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.search.DocIdSetIterator;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.util.BytesRef;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.runtime.IPath;
@@ -32,64 +25,68 @@ import org.eclipse.core.runtime.Path;
 
 import com.tlcsdm.eclipse.instasearch.InstaSearchPlugin;
 
+/**
+ * A search result. The fields shown in the results are read when searching,
+ * the stored document is only loaded if asked for (see {@link #getDoc()})
+ */
 public class SearchResultDoc {
 
-	private Document doc;
+	private Document doc; // loaded lazily
 	private int docId;
 	private float score;
 	private int matchCount;
-	private Directory indexDir;
-
-	public SearchResultDoc(Directory dir, Document doc, int docId, float score) {
-		this.indexDir = dir;
+	private Searcher searcher;
+	private Map<String, Float> termScores; // loaded lazily
+
+	private final String filePath;
+	private final String project;
+	private final String extension;
+	private final String jar;
+	private final long modificationStamp;
+
+	SearchResultDoc(Searcher searcher, int docId, float score, String filePath, String project, String extension,
+			String jar, long modificationStamp) {
+		this.searcher = searcher;
 		this.docId = docId;
-		this.doc = doc;
 		this.score = score;
+		this.filePath = filePath;
+		this.project = project;
+		this.extension = extension;
+		this.jar = jar;
+		this.modificationStamp = modificationStamp;
 
 		matchCount = 0;
 	}
 
-	private String getFieldValue(Field field) {
-		return doc.get(field.toString());
-	}
-
 	public String getFilePath() {
-		return getFieldValue(Field.FILE);
+		return filePath;
 	}
 
 	public String getFileName() {
-		return getFieldValue(Field.NAME);
+		return filePath.substring(filePath.lastIndexOf('/') + 1);
 	}
 
 	public String getFileExtension() {
-		return getFieldValue(Field.EXT);
+		return extension;
 	}
 
 	public boolean isInJar() {
-		if (doc.getField(Field.JAR.toString()) == null)
-			return false;
-
-		String jarField = getFieldValue(Field.JAR);
-
-		if (StorageIndexer.NO_VALUE.equals(jarField))
+		if (jar == null || StorageIndexer.NO_VALUE.equals(jar))
 			return false;
 
-		if (jarField.toLowerCase(Locale.ENGLISH).endsWith(".jar"))
-			return true;
-
-		return false;
+		return jar.toLowerCase(Locale.ENGLISH).endsWith(".jar");
 	}
 
 	public String getJarName() {
 
 		if (isInJar())
-			return getFieldValue(Field.JAR);
+			return jar;
 
 		return null;
 	}
 
 	public IPath getProject() {
-		return new Path(getFieldValue(Field.PROJ));
+		return new Path(project);
 	}
 
 	public String getProjectName() {
@@ -104,35 +101,9 @@ public class SearchResultDoc {
 	 * @throws IOException
 	 */
 	public double getTermScore(String term) throws IOException {
-		try (DirectoryReader reader = DirectoryReader.open(indexDir)) {
-			Terms terms = reader.termVectors().get(docId, Field.CONTENTS.toString());
-			
-			if (terms == null) {
-				return 0;
-			}
-			
-			TermsEnum termsEnum = terms.iterator();
-			BytesRef termBytes = new BytesRef(term);
-			
-			if (!termsEnum.seekExact(termBytes)) {
-				return 0;
-			}
-			
-			// Get term frequency from postings
-			int termFreq = 0;
-			PostingsEnum postings = termsEnum.postings(null, PostingsEnum.FREQS);
-			if (postings != null && postings.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
-				termFreq = postings.freq();
-			}
-			
-			int numDocs = reader.numDocs();
-			int docFreq = reader.docFreq(new Term(Field.CONTENTS.toString(), term));
-			
-			float tf = (float) Math.sqrt(termFreq);
-			float idf = (float) (Math.log(numDocs / (double) (docFreq + 1)) + 1.0);
-			
-			return tf * idf;
-		}
+		Float score = getTermScores().get(term);
+
+		return (score == null) ? 0 : score;
 	}
 
 	/**
@@ -142,19 +113,56 @@ public class SearchResultDoc {
 	 * @return array of term scores (tf-idf) for the given terms
 	 */
 	public float[] getTermScoreVector(Collection<String> terms) {
+		Map<String, Float> termScores;
+
+		try {
+			termScores = getTermScores();
+		} catch (IOException e) {
+			termScores = Collections.emptyMap();
+		}
+
 		float[] scores = new float[terms.size()];
 		int i = 0;
 		for (String term : terms) {
-			try {
-				scores[i] = (float) getTermScore(term);
-			} catch (IOException e) {
-				scores[i] = 0;
-			}
-			i++;
+			Float score = termScores.get(term);
+			scores[i++] = (score == null) ? 0 : score;
 		}
 		return scores;
 	}
 
+	/**
+	 * Character offsets of the terms in the file, as they were when the file was
+	 * indexed
+	 * 
+	 * @param terms
+	 * @return sorted offsets or null if the index does not have offsets
+	 * @throws IOException
+	 */
+	public int[] getTermOffsets(Collection<String> terms) throws IOException {
+		return searcher.getTermOffsets(getFilePath(), terms);
+	}
+
+	/**
+	 * @return modification stamp of the file when it was indexed
+	 */
+	public long getModificationStamp() {
+		return modificationStamp;
+	}
+
+	/**
+	 * Loads the scores of all terms in this document on first use. Reused for
+	 * all lines of the document
+	 * 
+	 * @return map of terms to their tf-idf scores
+	 * @throws IOException
+	 */
+	private synchronized Map<String, Float> getTermScores() throws IOException {
+		if (termScores == null)
+			termScores = searcher.getTermScores(getFilePath());
+
+		return termScores;
+	}
+
 	public IFile getFile() {
 		if (isInJar())
 			return null;
@@ -177,9 +185,15 @@ public class SearchResultDoc {
 	}
 
 	/**
-	 * @return the doc
+	 * Loads the stored fields of the file's document on first use
+	 * 
+	 * @return the doc or null if the file is no longer in the index
+	 * @throws IOException
 	 */
-	public Document getDoc() {
+	public synchronized Document getDoc() throws IOException {
+		if (doc == null)
+			doc = searcher.getStoredDocument(filePath);
+
 		return doc;
 	}
 
@@ -197,35 +211,8 @@ public class SearchResultDoc {
 		return matchCount;
 	}
 
-	/**
-	 * Computes match count as SUM( tf ) of all query terms in the document Accesses
-	 * the index thus affects performance
-	 * 
-	 * @param reader
-	 * @param queryTerms
-	 * @throws IOException
-	 */
-	public void computeMatchCount(IndexReader reader, Collection<String> queryTerms) throws IOException {
-		Terms terms = reader.termVectors().get(docId, Field.CONTENTS.toString());
-
-		if (terms == null)
-			return;
-
-		int freqSum = 0;
-		TermsEnum termsEnum = terms.iterator();
-
-		for (String queryTerm : queryTerms) {
-			BytesRef termBytes = new BytesRef(queryTerm);
-			if (termsEnum.seekExact(termBytes)) {
-				// Get term frequency from postings
-				PostingsEnum postings = termsEnum.postings(null, PostingsEnum.FREQS);
-				if (postings != null && postings.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
-					freqSum += postings.freq();
-				}
-			}
-		}
-
-		matchCount = freqSum;
+	void setMatchCount(int matchCount) {
+		this.matchCount = matchCount;
 	}
 
 	@Override
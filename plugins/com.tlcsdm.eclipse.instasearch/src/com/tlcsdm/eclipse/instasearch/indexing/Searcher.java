@@ -13,35 +13,68 @@ package com.tlcsdm.eclipse.instasearch.indexing;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.FilteringTokenFilter;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.ExitableDirectoryReader;
+import org.apache.lucene.index.ExitableDirectoryReader.ExitableFilterAtomicReader;
+import org.apache.lucene.index.ExitableDirectoryReader.ExitingReaderException;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.QueryTimeout;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.queryparser.classic.QueryParser.Operator;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollectorManager;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollectorManager;
 import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
 
@@ -56,6 +89,7 @@ import com.tlcsdm.eclipse.instasearch.indexing.querying.LastTermQueryPrefixer;
 import com.tlcsdm.eclipse.instasearch.indexing.querying.LowercaseConverter;
 import com.tlcsdm.eclipse.instasearch.indexing.querying.ModifiedTimeConverter;
 import com.tlcsdm.eclipse.instasearch.indexing.querying.QueryFuzzifier;
+import com.tlcsdm.eclipse.instasearch.indexing.querying.SubstringSearcher;
 import com.tlcsdm.eclipse.instasearch.indexing.querying.UppercaseNameExpander;
 import com.tlcsdm.eclipse.instasearch.indexing.querying.VisitableQuery;
 import com.tlcsdm.eclipse.instasearch.indexing.querying.WorkingSetExpander;
@@ -75,36 +109,90 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 	/** Character that identifies the current project in search query */
 	public static final String CURRENT_PROJECT_CHAR = ".";
 
-	private IndexSearcher indexSearcher;
-	private DirectoryReader directoryReader;
+	private ReferenceManager<IndexSearcher> searcherManager;
 
 	public static final ClassicSimilarity SIMILARITY = new ClassicSimilarity();
 	private static final QueryAnalyzer queryAnalyzer = new QueryAnalyzer(MIN_WORD_LENGTH);
 
-	// Query visitors that modify the search query
-	private CSVExpander csvExpander = new CSVExpander();
-	private WorkingSetExpander workingSetExpander = new WorkingSetExpander();
-	private UppercaseNameExpander uppercaseNameExpander = new UppercaseNameExpander();
-	private FieldAliasConverter fieldAliasConverter = new FieldAliasConverter();
-	private ModifiedTimeConverter modifiedTimeConverter = new ModifiedTimeConverter();
-	private LowercaseConverter lowercaseConverter = new LowercaseConverter();
-	private FolderSearcher folderSearcher = new FolderSearcher();
-	private FileNameSearcher fileNameSearcher = new FileNameSearcher();
-	private CurrentProjectSetter currentProjectSetter = new CurrentProjectSetter();
-	private QueryFuzzifier queryFuzzifier = new QueryFuzzifier();
-	private LastTermQueryPrefixer lastTermQueryPrefixer = new LastTermQueryPrefixer(MIN_QUERY_LENGTH + 1);
-	private FilterSetter filterSetter = new FilterSetter();
-
-	private boolean showMatchCounts = true;
-	private boolean fuzzySearchAuto = true;
+	// Stateless query visitors that modify the search query. Shared by all
+	// searches. Visitors that keep state are created per query (see rewriteQuery)
+	private final CSVExpander csvExpander = new CSVExpander();
+	private final WorkingSetExpander workingSetExpander = new WorkingSetExpander();
+	private final UppercaseNameExpander uppercaseNameExpander = new UppercaseNameExpander();
+	private final FieldAliasConverter fieldAliasConverter = new FieldAliasConverter();
+	private final ModifiedTimeConverter modifiedTimeConverter = new ModifiedTimeConverter();
+	private final LowercaseConverter lowercaseConverter = new LowercaseConverter();
+	private final FolderSearcher folderSearcher = new FolderSearcher();
+	private final QueryFuzzifier queryFuzzifier = new QueryFuzzifier();
+	private final SubstringSearcher substringSearcher = new SubstringSearcher();
+	private final PreviousMatches previousMatches = new PreviousMatches();
+	private final TermCompletions termCompletions = new TermCompletions();
+
+	private volatile boolean showMatchCounts = true;
+	private volatile boolean fuzzySearchAuto = true;
+	private volatile boolean parallelSearch = false;
+	private volatile int searchThreads = 1;
 	private SearcherConfig config;
 
+	/** At most the fallback passes of one search run at once */
+	private static final int SEARCH_PASS_THREADS = 2;
+
+	/**
+	 * Runs the fallback passes of parallel searches. Passes of searches that were
+	 * replaced by a newer one are removed from the queue, see
+	 * {@link SearchPass#cancel()}
+	 */
+	private static final ThreadPoolExecutor searchExecutor = new ThreadPoolExecutor(SEARCH_PASS_THREADS,
+			SEARCH_PASS_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new SearchThreadFactory("InstaSearch Searcher #", Thread.NORM_PRIORITY - 1));
+
+	static {
+		searchExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/** Smallest number of documents searched by one thread */
+	private static final int MIN_DOCS_PER_SLICE = 5000;
+
+	/**
+	 * Searches slices of the index for a query, together with the thread running
+	 * the query
+	 */
+	private final ThreadPoolExecutor sliceExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new SearchThreadFactory("InstaSearch Slice Searcher #", Thread.NORM_PRIORITY));
+
 	public interface SearcherConfig {
 		boolean getBoolPref(String pref);
 
 		void log(Exception e);
 
 		Directory getIndexDir() throws IOException;
+
+		/**
+		 * @return writer to open near-real-time readers from or null to read the
+		 *         committed index in {@link #getIndexDir()}
+		 * @throws IOException
+		 */
+		default IndexWriter getIndexWriter() throws IOException {
+			return null;
+		}
+
+		/**
+		 * @return writers of the project shards searched together with
+		 *         {@link #getIndexWriter()} or null if the index has no shards
+		 * @throws IOException
+		 */
+		default List<IndexWriter> getShardWriters() throws IOException {
+			return null;
+		}
+
+		/**
+		 * @return number of threads searching the index for one query, 1 to search
+		 *         only on the calling thread
+		 */
+		default int getSearchThreads() {
+			return Runtime.getRuntime().availableProcessors();
+		}
 	}
 
 	/**
@@ -112,6 +200,7 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 	 */
 	public Searcher(SearcherConfig config) {
 		this.config = config;
+		sliceExecutor.allowCoreThreadTimeOut(true);
 		initPrefs();
 	}
 
@@ -119,28 +208,48 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 		return config.getIndexDir();
 	}
 
-	private SearchResult searchIndex(SearchQuery searchQuery) throws Exception {
+	/**
+	 * Runs one search pass. The search query is only read so that concurrent
+	 * searches and passes don't interfere
+	 */
+	private SearchResult searchIndex(SearchQuery searchQuery, IndexSearcher indexSearcher, boolean exact,
+			boolean fuzzy) throws Exception {
+		return searchIndex(searchQuery, indexSearcher, indexSearcher.getIndexReader(), exact, fuzzy);
+	}
+
+	/**
+	 * @param matchesReader reader the previous matches are kept for. The reader of
+	 *                      the searcher may be a wrapper of it with the same
+	 *                      documents, see {@link SearchPass#start()}
+	 */
+	private SearchResult searchIndex(SearchQuery searchQuery, IndexSearcher indexSearcher, IndexReader matchesReader,
+			boolean exact, boolean fuzzy) throws Exception {
 
-		IndexSearcher indexSearcher = getIndexSearcher();
 		IndexReader reader = indexSearcher.getIndexReader();
-		boolean exact = searchQuery.isExact();
+		String searchString = searchQuery.getSearchString();
 
-		Query query = null;
+		Query query = null; // before lucene's rewrite, to compare with the previous query
+		Query rewrittenQuery = null;
+		boolean suffixes = hasSuffixes(reader);
+		boolean prefix = true;
 
 		try {
-			query = parseSearchQuery(searchQuery, reader, exact, true);
+			query = parseSearchQuery(searchQuery, searchString, exact, fuzzy, prefix, suffixes);
+			rewrittenQuery = query.rewrite(indexSearcher); // lucene's rewrite (ie expand prefix queries)
 
 		} catch (IndexSearcher.TooManyClauses e) { // too many, try without prefix search
-			query = parseSearchQuery(searchQuery, reader, exact, false);
+			prefix = false;
+			query = parseSearchQuery(searchQuery, searchString, exact, fuzzy, prefix, suffixes);
+			rewrittenQuery = query.rewrite(indexSearcher);
 
 		} catch (ParseException e) {
 
 			// remove special query characters
-			String newSearchString = searchQuery.getSearchString().replaceAll("[\\(\\)\"\\[\\]'\\{\\}]", " ");
+			searchString = searchString.replaceAll("[\\(\\)\"\\[\\]'\\{\\}]", " ");
 
 			try {
-				searchQuery.setSearchString(newSearchString);
-				query = parseSearchQuery(searchQuery, reader, exact, true);
+				query = parseSearchQuery(searchQuery, searchString, exact, fuzzy, prefix, suffixes);
+				rewrittenQuery = query.rewrite(indexSearcher);
 
 			} catch (ParseException ignored) {
 				// can have error while typing query, just ignore
@@ -149,45 +258,90 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 			}
 		}
 
-		return collectSearchResults(searchQuery, indexSearcher, reader, query);
+		SearchResult result = collectSearchResults(searchQuery, indexSearcher, reader, matchesReader, query,
+				rewrittenQuery, PreviousMatches.getPass(exact, fuzzy));
+
+		if (result != null)
+			countFilteredFields(searchQuery, indexSearcher, searchString, exact, fuzzy, prefix, suffixes,
+					result.getFacetCounts());
+
+		return result;
+	}
+
+	/**
+	 * Counts the values of each filtered field without the filter of that field,
+	 * so that the other values show how many matches they would have if chosen
+	 * instead. Runs one counting query per filtered field
+	 */
+	private void countFilteredFields(SearchQuery searchQuery, IndexSearcher indexSearcher, String searchString,
+			boolean exact, boolean fuzzy, boolean prefix, boolean suffixes, FacetCounts facetCounts)
+			throws Exception {
+		Map<Field, Set<String>> filter = searchQuery.getFilter();
+
+		if (filter == null)
+			return;
+
+		for (Field field : FacetCounts.FIELDS) {
+			if (!filter.containsKey(field) || searchQuery.isCanceled())
+				continue;
+
+			Map<Field, Set<String>> otherFilters = new HashMap<Field, Set<String>>(filter);
+			otherFilters.remove(field);
+
+			SearchQuery otherQuery = new SearchQuery(searchQuery);
+			otherQuery.setFilter(otherFilters);
+
+			Query query = parseSearchQuery(otherQuery, searchString, exact, fuzzy, prefix, suffixes);
+			FacetCounts otherCounts = indexSearcher.search(query, FacetCounts.createCollectorManager());
+
+			facetCounts.setCounts(field, otherCounts.getCounts(field));
+		}
+	}
+
+	/**
+	 * @return whether the words of contents have their suffixes indexed
+	 */
+	private static boolean hasSuffixes(IndexReader reader) {
+		return FieldInfos.getIndexedFields(reader).contains(Field.SUFFIX.toString());
 	}
 
 	private SearchResult collectSearchResults(SearchQuery searchQuery, IndexSearcher indexSearcher, IndexReader reader,
-			Query query) throws IOException {
+			IndexReader matchesReader, Query query, Query rewrittenQuery, int pass) throws IOException {
 		int maxResults = reader.numDocs(); // all documents
 
 		if (searchQuery.isLimited())
 			maxResults = searchQuery.getMaxResults();
 
-		Map<String, Float> searchTerms = extractTerms(query);
+		Map<String, Float> searchTerms = extractTerms(rewrittenQuery);
 
 		if (searchQuery.isCanceled())
 			return null;
 
-		// Use IndexSearcher.search to get TopDocs
-		TopDocs topDocs = indexSearcher.search(query, maxResults);
+		// while typing, only look among the documents matched by the previous query
+		Query restrictedQuery = previousMatches.restrict(pass, matchesReader, query, rewrittenQuery);
 
-		if (topDocs.totalHits.value() == 0)
+		if (restrictedQuery == null)
 			return null;
 
-		ScoreDoc[] hits = topDocs.scoreDocs;
-		ArrayList<SearchResultDoc> resultDocs = new ArrayList<>(hits.length);
+		int numHits = Math.max(1, Math.min(maxResults, reader.maxDoc()));
+		Object[] collected = indexSearcher.search(restrictedQuery,
+				new MultiCollectorManager(new TopScoreDocCollectorManager(numHits, Integer.MAX_VALUE),
+						PreviousMatches.createMatchCollectorManager(reader.maxDoc()),
+						FacetCounts.createCollectorManager()));
 
-		for (int i = 0; i < hits.length && !searchQuery.isCanceled(); i++) {
-			int docId = hits[i].doc;
-			float score = hits[i].score;
+		TopDocs topDocs = (TopDocs) collected[0];
 
-			Document doc = reader.storedFields().document(docId);
+		if (!searchQuery.isCanceled() && !indexSearcher.timedOut()) // only complete matches narrow the next search
+			previousMatches.put(pass, matchesReader, query, (FixedBitSet) collected[1]);
 
-			SearchResultDoc resultDoc = new SearchResultDoc(getIndexDir(), doc, docId, score);
+		if (topDocs.totalHits.value() == 0)
+			return null;
 
-			if (showMatchCounts)
-				resultDoc.computeMatchCount(reader, searchTerms.keySet());
+		// fields of the results come from doc values, no stored documents are loaded
+		ResultFields resultFields = new ResultFields(this, reader, showMatchCounts ? searchTerms.keySet() : null);
+		List<SearchResultDoc> resultDocs = new ArrayList<>(Arrays.asList(resultFields.load(topDocs.scoreDocs)));
 
-			resultDocs.add(resultDoc);
-		}
-
-		return new SearchResult(searchQuery, resultDocs, searchTerms);
+		return new SearchResult(searchQuery, resultDocs, searchTerms, (FacetCounts) collected[2]);
 	}
 
 	/**
@@ -206,92 +360,319 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 			return null;
 
 		SearchResult result = null;
+		IndexSearcher indexSearcher = acquireSearcher(); // same index snapshot for all passes
+
+		try {
+			result = search(searchQuery, indexSearcher);
+		} finally {
+			releaseSearcher(indexSearcher);
+		}
 
-		if (searchQuery.isFuzzy()) {
-			searchQuery.setExact(false);
-			result = searchIndex(searchQuery); // search fuzzy
+		return result;
+	}
+
+	/**
+	 * Runs the search passes. Afterwards the exact and fuzzy flags of the query
+	 * tell which pass produced the result.
+	 */
+	private SearchResult search(SearchQuery searchQuery, IndexSearcher indexSearcher) throws Exception {
+		if (parallelSearch && !searchQuery.isFuzzy() && Runtime.getRuntime().availableProcessors() > 1)
+			return searchInParallel(searchQuery, indexSearcher);
+
+		SearchResult result = null;
+		boolean exact = searchQuery.isExact();
+		boolean fuzzy = searchQuery.isFuzzy();
+
+		if (fuzzy) {
+			exact = false;
+			result = searchIndex(searchQuery, indexSearcher, exact, fuzzy); // search fuzzy
 		} else {
 			// 1. search exact text
-			if (searchQuery.isExact())
-				result = searchIndex(searchQuery);
+			if (exact)
+				result = searchIndex(searchQuery, indexSearcher, exact, fuzzy);
 
 			// 2. split search text into tokens and search (non-exact)
 			if ((result == null || result.isEmpty()) && !searchQuery.isCanceled()) {
-				searchQuery.setExact(false);
-				result = searchIndex(searchQuery);
+				exact = false;
+				result = searchIndex(searchQuery, indexSearcher, exact, fuzzy);
 			}
 
 			// 3. search wildcarded and fuzzy matches
 			if ((result == null || result.isEmpty()) && fuzzySearchAuto && !searchQuery.isCanceled()) { // if fuzzy
 																										// search
 																										// enabled
-				searchQuery.setFuzzy(true);
-				searchQuery.setExact(false);
+				fuzzy = true;
+				exact = false;
 
-				result = searchIndex(searchQuery);
+				result = searchIndex(searchQuery, indexSearcher, exact, fuzzy);
 			}
 		}
 
+		searchQuery.setExact(exact);
+		searchQuery.setFuzzy(fuzzy);
+
 		return result;
 	}
 
 	/**
-	 * @return the indexSearcher
+	 * Runs the same passes as {@link #search(SearchQuery, IndexSearcher)} but
+	 * starts the fallback passes right away on the search executor instead of
+	 * waiting for the previous pass to find nothing. The first pass in priority
+	 * order that finds something wins and the other passes are canceled.
+	 */
+	private SearchResult searchInParallel(SearchQuery searchQuery, IndexSearcher indexSearcher) throws Exception {
+		List<SearchPass> passes = new ArrayList<>(3);
+
+		if (searchQuery.isExact())
+			passes.add(new SearchPass(searchQuery, indexSearcher, true, false));
+		passes.add(new SearchPass(searchQuery, indexSearcher, false, false));
+		if (fuzzySearchAuto)
+			passes.add(new SearchPass(searchQuery, indexSearcher, false, true));
+
+		SearchPass lastPass = passes.get(0);
+
+		try {
+			for (int i = 1; i < passes.size(); i++)
+				passes.get(i).start();
+
+			for (SearchPass pass : passes) {
+				lastPass = pass;
+				SearchResult result = pass.getResult();
+
+				if (result != null && !result.isEmpty()) {
+					searchQuery.setExact(pass.exact);
+					searchQuery.setFuzzy(pass.fuzzy);
+
+					return new SearchResult(searchQuery, result.getResultDocs(), result.getSearchTerms(),
+							result.getFacetCounts());
+				}
+
+				if (searchQuery.isCanceled())
+					break;
+			}
+		} finally {
+			for (SearchPass pass : passes)
+				pass.cancel();
+		}
+
+		searchQuery.setExact(lastPass.exact);
+		searchQuery.setFuzzy(lastPass.fuzzy);
+
+		return null;
+	}
+
+	/**
+	 * Opens the searcher manager on first use. Readers are opened from the
+	 * indexer's writer if there is one (near-real-time), otherwise from the
+	 * committed index. An index with project shards is read through one reader
+	 * over all shards.
+	 * 
+	 * @return the searcherManager
 	 * @throws IOException
 	 */
-	private IndexSearcher getIndexSearcher() throws IOException {
-		if (indexSearcher == null) {
-			directoryReader = DirectoryReader.open(getIndexDir());
-			indexSearcher = new IndexSearcher(directoryReader);
-			indexSearcher.setSimilarity(SIMILARITY);
+	private synchronized ReferenceManager<IndexSearcher> getSearcherManager() throws IOException {
+		if (searcherManager == null) {
+			IndexWriter indexWriter = config.getIndexWriter();
+
+			if (indexWriter != null && config.getShardWriters() != null)
+				searcherManager = new ShardSearcherManager(config, new SimilaritySearcherFactory());
+			else if (indexWriter != null)
+				searcherManager = new SearcherManager(indexWriter, true, false, new SimilaritySearcherFactory());
+			else
+				searcherManager = new SearcherManager(getIndexDir(), new SimilaritySearcherFactory());
 		}
 
-		return indexSearcher;
+		return searcherManager;
 	}
 
 	/**
-	 * Get all terms that start with prefixText
+	 * Acquires the current index searcher. Must be released with
+	 * {@link #releaseSearcher(IndexSearcher)}
 	 * 
-	 * @param prefixText
-	 * @param prefixField
+	 * @return the indexSearcher
+	 * @throws IOException
+	 */
+	private synchronized IndexSearcher acquireSearcher() throws IOException {
+		return getSearcherManager().acquire();
+	}
+
+	/**
+	 * Releases a searcher obtained from {@link #acquireSearcher()}. The reader
+	 * stays open until the last searcher using it is released, even if the
+	 * manager has been refreshed or closed in the meantime.
 	 * 
-	 * @return proposed terms
+	 * @param indexSearcher
 	 * @throws IOException
 	 */
-	public List<String> getProposals(String prefixText, Field prefixField) throws IOException {
-		ArrayList<String> proposals = new ArrayList<>();
-		IndexReader reader = getIndexSearcher().getIndexReader();
-		prefixText = prefixText.toLowerCase(Locale.ENGLISH);
+	private static void releaseSearcher(IndexSearcher indexSearcher) throws IOException {
+		indexSearcher.getIndexReader().decRef(); // same as SearcherManager.release()
+	}
+
+	/**
+	 * Computes the tf-idf scores of all terms in the document of the given file
+	 * using a single searcher. Documents are looked up by file path since
+	 * document ids change when the searcher is refreshed.
+	 * 
+	 * @param filePath
+	 * @return map of terms to their scores, empty if the file is not in the index
+	 * @throws IOException
+	 */
+	Map<String, Float> getTermScores(String filePath) throws IOException {
+		IndexSearcher indexSearcher = acquireSearcher();
+
+		try {
+			IndexReader reader = indexSearcher.getIndexReader();
+			int docId = getDocId(indexSearcher, filePath);
+
+			if (docId == -1)
+				return Collections.emptyMap();
+
+			String field = Field.CONTENTS.toString();
+			Terms terms = reader.termVectors().get(docId, field);
 
-		// Iterate over all leaves (segments) and their terms
-		for (int i = 0; i < reader.leaves().size(); i++) {
-			Terms terms = reader.leaves().get(i).reader().terms(prefixField.toString());
 			if (terms == null)
-				continue;
+				return Collections.emptyMap();
 
+			Map<String, Float> termScores = new HashMap<>();
+			int numDocs = reader.numDocs();
 			TermsEnum termsEnum = terms.iterator();
-			BytesRef prefix = new BytesRef(prefixText);
+			BytesRef termBytes;
 
-			// Seek to the prefix
-			if (termsEnum.seekCeil(prefix) == TermsEnum.SeekStatus.END)
-				continue;
+			while ((termBytes = termsEnum.next()) != null) {
+				long termFreq = termsEnum.totalTermFreq(); // freq of the term in this document
+				int docFreq = reader.docFreq(new Term(field, BytesRef.deepCopyOf(termBytes)));
 
-			do {
-				BytesRef termBytes = termsEnum.term();
-				if (termBytes == null)
-					break;
+				float tf = (float) Math.sqrt(termFreq);
+				float idf = (float) (Math.log(numDocs / (double) (docFreq + 1)) + 1.0);
 
-				String termText = termBytes.utf8ToString();
-				if (!termText.toLowerCase(Locale.ENGLISH).startsWith(prefixText))
-					break;
+				termScores.put(termBytes.utf8ToString(), tf * idf);
+			}
+
+			return termScores;
+		} finally {
+			releaseSearcher(indexSearcher);
+		}
+	}
+
+	/**
+	 * Returns start offsets of the given terms in the contents of the file. The
+	 * offsets are read from the term vector, the file itself is not read.
+	 * 
+	 * @param filePath
+	 * @param queryTerms
+	 * @return sorted character offsets or null if they are not stored in the index
+	 * @throws IOException
+	 */
+	int[] getTermOffsets(String filePath, Collection<String> queryTerms) throws IOException {
+		IndexSearcher indexSearcher = acquireSearcher();
+
+		try {
+			int docId = getDocId(indexSearcher, filePath);
+
+			if (docId == -1)
+				return null;
+
+			Terms terms = indexSearcher.getIndexReader().termVectors().get(docId, Field.CONTENTS.toString());
+
+			if (terms == null || !terms.hasOffsets()) // indexed by an older version
+				return null;
+
+			int[] offsets = new int[16];
+			int count = 0;
+			TermsEnum termsEnum = terms.iterator();
+			PostingsEnum postings = null;
 
-				if (!proposals.contains(termText)) {
-					proposals.add(termText);
+			for (String queryTerm : queryTerms) {
+				if (!termsEnum.seekExact(new BytesRef(queryTerm)))
+					continue;
+
+				postings = termsEnum.postings(postings, PostingsEnum.OFFSETS);
+				postings.nextDoc(); // term vector has a single document
+
+				for (int i = 0; i < postings.freq(); i++) {
+					postings.nextPosition();
+
+					if (count == offsets.length)
+						offsets = ArrayUtil.grow(offsets);
+
+					offsets[count++] = postings.startOffset();
 				}
-			} while (termsEnum.next() != null);
+			}
+
+			offsets = ArrayUtil.copyOfSubArray(offsets, 0, count);
+			Arrays.sort(offsets);
+
+			return offsets;
+		} finally {
+			releaseSearcher(indexSearcher);
+		}
+	}
+
+	/**
+	 * Loads the stored fields of the file's document from the current index
+	 * 
+	 * @param filePath
+	 * @return the document or null if the file is not in the index
+	 * @throws IOException
+	 */
+	Document getStoredDocument(String filePath) throws IOException {
+		IndexSearcher indexSearcher = acquireSearcher();
+
+		try {
+			int docId = getDocId(indexSearcher, filePath);
+
+			if (docId == -1)
+				return null;
+
+			return indexSearcher.storedFields().document(docId);
+		} finally {
+			releaseSearcher(indexSearcher);
 		}
+	}
+
+	/**
+	 * @param indexSearcher
+	 * @param filePath
+	 * @return current id of the file's document or -1 if it's not in the index
+	 * @throws IOException
+	 */
+	private static int getDocId(IndexSearcher indexSearcher, String filePath) throws IOException {
+		TopDocs topDocs = indexSearcher.search(new TermQuery(Field.FILE.createTerm(filePath)), 1);
+
+		return (topDocs.scoreDocs.length == 0) ? -1 : topDocs.scoreDocs[0].doc;
+	}
+
+	/**
+	 * Get all terms that start with prefixText
+	 * 
+	 * @param prefixText
+	 * @param prefixField
+	 * 
+	 * @return proposed terms
+	 * @throws IOException
+	 */
+	public List<String> getProposals(String prefixText, Field prefixField) throws IOException {
+		return getProposals(prefixText, prefixField, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get the most frequent terms that start with prefixText (case insensitive)
+	 * 
+	 * @param prefixText
+	 * @param prefixField
+	 * @param maxProposals
+	 * 
+	 * @return proposed terms, most frequent first
+	 * @throws IOException
+	 */
+	public List<String> getProposals(String prefixText, Field prefixField, int maxProposals) throws IOException {
+		IndexSearcher indexSearcher = acquireSearcher();
 
-		return proposals;
+		try {
+			return termCompletions.complete(indexSearcher.getIndexReader(), prefixField, prefixText, maxProposals);
+		} finally {
+			releaseSearcher(indexSearcher);
+		}
 	}
 
 	/**
@@ -305,61 +686,52 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 	}
 
 	/**
-	 * Need to reset searcher when index has been updated Otherwise changes won't
-	 * appear in the results It is recommended to do a warmup search after the
-	 * searcher was reset
+	 * Closes the searcher manager when the index is deleted or re-created. It is
+	 * opened again on the next search. Searches that are still running keep
+	 * their reader until they release it.
 	 * 
 	 */
-
 	public void onIndexReset() {
 		resetSearcher();
 	}
 
-	private void resetSearcher() {
-		if (directoryReader != null) {
+	private synchronized void resetSearcher() {
+		previousMatches.clear();
+
+		if (searcherManager != null) {
 			try {
-				directoryReader.close();
+				searcherManager.close();
 			} catch (IOException e) {
 				config.log(e);
 			} finally {
-				directoryReader = null;
-				indexSearcher = null;
+				searcherManager = null;
 			}
 		}
 	}
 
 	/**
-	 * Warmup search. Searches after this will be faster
-	 * 
-	 * @throws Exception
-	 */
-	private void warmup() throws Exception {
-		search(new SearchQuery("<warmup search>", 1));
-	}
-
-	/**
-	 * Closes and re-opens the index for searching Should be called after the index
-	 * is updated
+	 * Refreshes the searcher so that index changes appear in the results. Only
+	 * changed segments are re-opened.
 	 * 
 	 */
 	public void onIndexUpdate() {
 
-		resetSearcher();
-
 		try {
-			warmup();
-		} catch (Exception e) {
+			getSearcherManager().maybeRefresh();
+		} catch (AlreadyClosedException e) { // writer was closed, re-open on next search
+			resetSearcher();
+		} catch (IOException e) {
+			resetSearcher();
 			config.log(e);
 		}
 	}
 
-	private Query parseSearchQuery(SearchQuery searchQuery, IndexReader reader, boolean exact, boolean prefix)
-			throws ParseException, IOException {
-		String searchString = searchQuery.getSearchString();
+	private Query parseSearchQuery(SearchQuery searchQuery, String searchString, boolean exact, boolean fuzzy,
+			boolean prefix, boolean suffixes) throws ParseException, IOException {
 
 		IndexSearcher.setMaxClauseCount(5000); // so we don't get TooManyClauses exceptions
 
-		Query exactQuery = createExactQuery(searchQuery);
+		Query exactQuery = createExactQuery(searchString);
 		Query returnQuery;
 
 		if (exact) // want exact search, use KeywordAnalyzer
@@ -374,25 +746,25 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 			returnQuery = builder.build();
 		}
 
-		returnQuery = rewriteQuery(searchQuery, prefix, returnQuery);
-
-		returnQuery = returnQuery.rewrite(new IndexSearcher(reader)); // lucene's rewrite (ie expand prefix queries)
+		returnQuery = rewriteQuery(searchQuery, fuzzy, prefix, suffixes, returnQuery);
 		// System.out.println("q: " + returnQuery + " - exact " + exact);
 
 		return returnQuery;
 	}
 
 	/**
-	 * @param searchQuery
+	 * @param searchString
 	 * @return
 	 * @throws ParseException
 	 */
-	private Query createExactQuery(SearchQuery searchQuery) throws ParseException {
+	private Query createExactQuery(String searchString) throws ParseException {
 		Query query = null;
-		String searchString = searchQuery.getSearchString();
 
 		if (searchString.contains(" ")) {
-			query = parserSearchString(searchString, new StandardAnalyzer());
+			// keyword fields such as proj:"my project" are matched as a whole
+			Analyzer analyzer = new PerFieldAnalyzerWrapper(new KeywordAnalyzer(),
+					Collections.<String, Analyzer>singletonMap(Field.CONTENTS.toString(), new StandardAnalyzer()));
+			query = parserSearchString(searchString, analyzer);
 			query = convertToPhraseQuery(query);
 		} else {
 			query = parserSearchString(searchString, new KeywordAnalyzer()); // searchstring is one term
@@ -401,7 +773,7 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 		VisitableQuery visitableQuery = new VisitableQuery(query);
 
 		visitableQuery.accept(uppercaseNameExpander);
-		visitableQuery.accept(fileNameSearcher);
+		visitableQuery.accept(new FileNameSearcher());
 
 		query = visitableQuery.getQuery();
 
@@ -413,40 +785,55 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 
 		Set<Term> terms = new LinkedHashSet<>();
 
-		try {
-			query.visit(new org.apache.lucene.search.QueryVisitor() {
-				@Override
-				public void consumeTerms(Query query, Term... extractedTerms) {
-					for (Term t : extractedTerms) {
-						terms.add(t);
-					}
-				}
-			});
+		if (!collectTerms(query, terms))
+			return query;
 
-			for (Term term : terms) {
-				Field field = Field.fromTerm(term);
+		for (Term term : terms) {
+			Field field = Field.fromTerm(term);
 
-				if (Field.CONTENTS == field)
-					phraseQueryBuilder.add(term);
-				else
-					return query;
-			}
-		} catch (UnsupportedOperationException ignored) // not all queries support it
-		{
-			return query;
+			if (Field.CONTENTS == field)
+				phraseQueryBuilder.add(term);
+			else
+				return query;
 		}
 
 		return phraseQueryBuilder.build();
 	}
 
-	private Query rewriteQuery(SearchQuery searchQuery, boolean prefix, Query query) {
+	/**
+	 * Collects terms in the order they appear in the query. Query.visit() can't
+	 * be used since it visits boolean clauses in no particular order
+	 * 
+	 * @return false if the query has other than term and phrase queries
+	 */
+	private static boolean collectTerms(Query query, Collection<Term> terms) {
+		if (query instanceof TermQuery) {
+			terms.add(((TermQuery) query).getTerm());
+		} else if (query instanceof PhraseQuery) {
+			terms.addAll(Arrays.asList(((PhraseQuery) query).getTerms()));
+		} else if (query instanceof BoostQuery) {
+			return collectTerms(((BoostQuery) query).getQuery(), terms);
+		} else if (query instanceof BooleanQuery) {
+			for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+				if (!collectTerms(clause.query(), terms))
+					return false;
+			}
+		} else {
+			return false;
+		}
+
+		return true;
+	}
+
+	private Query rewriteQuery(SearchQuery searchQuery, boolean fuzzy, boolean prefix, boolean suffixes,
+			Query query) {
 		VisitableQuery visitableQuery = new VisitableQuery(query);
 
 		visitableQuery.accept(uppercaseNameExpander);
 
 		visitableQuery.accept(lowercaseConverter);
 
-		if (searchQuery.isFuzzy())
+		if (fuzzy)
 			visitableQuery.accept(queryFuzzifier);
 
 		visitableQuery.accept(csvExpander);
@@ -454,26 +841,25 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 		visitableQuery.accept(modifiedTimeConverter);
 		visitableQuery.accept(folderSearcher);
 
-		if (prefix && !searchQuery.isFuzzy()) // prefix last term query for substring search while typing
-			visitableQuery.accept(lastTermQueryPrefixer);
+		if (suffixes) // substrings (*term*) without going through all words
+			visitableQuery.accept(substringSearcher);
 
-		if (searchQuery.getFilter() != null) {
-			filterSetter.setFilter(searchQuery.getFilter());
-			visitableQuery.accept(filterSetter);
-		}
+		if (prefix && !fuzzy) // prefix last term query for substring search while typing
+			visitableQuery.accept(new LastTermQueryPrefixer(MIN_QUERY_LENGTH + 1));
+
+		if (searchQuery.getFilter() != null)
+			visitableQuery.accept(new FilterSetter(searchQuery.getFilter()));
 
 		visitableQuery.accept(workingSetExpander);
 
-		if (searchQuery.getCurrentProject() != null) {
-			currentProjectSetter.setCurrentProject(searchQuery.getCurrentProject());
-			visitableQuery.accept(currentProjectSetter);
-		}
+		if (searchQuery.getCurrentProject() != null)
+			visitableQuery.accept(new CurrentProjectSetter(searchQuery.getCurrentProject()));
 
 		return visitableQuery.getQuery(); // the modified query after all visitors
 	}
 
 	private Query parserSearchString(String searchString, Analyzer analyzer) throws ParseException {
-		QueryParser queryParser = new QueryParser(Field.CONTENTS.toString(), analyzer);
+		QueryParser queryParser = new WordPartQueryParser(analyzer);
 		queryParser.setDefaultOperator(Operator.AND); // all fields required
 		// In Lucene 9.x, setLowercaseExpandedTerms was removed - expanded terms are now
 		// always lowercased
@@ -516,9 +902,107 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 		return terms;
 	}
 
+	/**
+	 * Parses words that the analyzer splits into parts at the same position. A
+	 * word matches if any of its parts match. In phrases only the whole words are
+	 * used
+	 */
+	private static class WordPartQueryParser extends QueryParser {
+
+		public WordPartQueryParser(Analyzer analyzer) {
+			super(Field.CONTENTS.toString(), analyzer);
+		}
+
+		@Override
+		protected Query newSynonymQuery(String field, TermAndBoost[] terms) {
+			BooleanQuery.Builder builder = new BooleanQuery.Builder();
+
+			for (TermAndBoost term : terms)
+				builder.add(newTermQuery(new Term(field, term.term()), term.boost()), Occur.SHOULD);
+
+			return builder.build();
+		}
+
+		@Override
+		protected Query analyzeMultiPhrase(String field, TokenStream stream, int slop) throws IOException {
+			TokenStream words = new FilteringTokenFilter(stream) {
+				private final PositionIncrementAttribute posAtt = addAttribute(PositionIncrementAttribute.class);
+
+				@Override
+				protected boolean accept() {
+					return posAtt.getPositionIncrement() != 0; // skip word parts
+				}
+			};
+
+			return analyzePhrase(field, words, slop);
+		}
+	}
+
+	/**
+	 * Creates searchers that use the same similarity as the indexer, see
+	 * {@link Searcher#createIndexSearcher(IndexReader)}
+	 */
+	private class SimilaritySearcherFactory extends SearcherFactory {
+		@Override
+		public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+			termCompletions.warm(reader); // new segments, off the UI thread when refreshed after indexing
+
+			return createIndexSearcher(reader);
+		}
+	}
+
+	/**
+	 * Creates a searcher that searches slices of the index on several threads.
+	 * Large segments are split into several slices, so that a fully merged index
+	 * is also searched in parallel
+	 */
+	private IndexSearcher createIndexSearcher(IndexReader reader) {
+		final int threads = searchThreads;
+		IndexSearcher indexSearcher;
+
+		if (threads <= 1) {
+			indexSearcher = new IndexSearcher(reader);
+		} else {
+			indexSearcher = new IndexSearcher(reader, sliceExecutor) {
+				@Override
+				protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+					int maxDoc = 0;
+					for (LeafReaderContext leaf : leaves)
+						maxDoc += leaf.reader().maxDoc();
+
+					int docsPerSlice = Math.max(MIN_DOCS_PER_SLICE, (maxDoc + threads - 1) / threads);
+
+					return slices(leaves, docsPerSlice, Integer.MAX_VALUE, true);
+				}
+			};
+		}
+
+		indexSearcher.setSimilarity(SIMILARITY);
+		return indexSearcher;
+	}
+
+	/**
+	 * The calling thread searches too, so the executor has one thread less
+	 */
+	private void setSearchThreads(int threads) {
+		int poolSize = Math.max(1, threads - 1);
+
+		if (poolSize > sliceExecutor.getMaximumPoolSize()) {
+			sliceExecutor.setMaximumPoolSize(poolSize);
+			sliceExecutor.setCorePoolSize(poolSize);
+		} else {
+			sliceExecutor.setCorePoolSize(poolSize);
+			sliceExecutor.setMaximumPoolSize(poolSize);
+		}
+
+		searchThreads = threads;
+	}
+
 	protected void initPrefs() {
 		fuzzySearchAuto = config.getBoolPref(PreferenceConstants.P_FUZZY_SEARCH_AUTO);
+		parallelSearch = config.getBoolPref(PreferenceConstants.P_PARALLEL_SEARCH);
 		showMatchCounts = config.getBoolPref(PreferenceConstants.P_SHOW_MATCH_COUNT);
+		setSearchThreads(config.getSearchThreads());
 	}
 
 	@Override
@@ -529,6 +1013,148 @@ public class Searcher implements IPropertyChangeListener, IndexChangeListener {
 			showMatchCounts = config.getBoolPref(PreferenceConstants.P_SHOW_MATCH_COUNT);
 		else if (PreferenceConstants.P_FUZZY_SEARCH_AUTO.equals(prop))
 			fuzzySearchAuto = config.getBoolPref(PreferenceConstants.P_FUZZY_SEARCH_AUTO);
+		else if (PreferenceConstants.P_PARALLEL_SEARCH.equals(prop))
+			parallelSearch = config.getBoolPref(PreferenceConstants.P_PARALLEL_SEARCH);
+		else if (PreferenceConstants.P_SEARCH_THREADS.equals(prop)) {
+			setSearchThreads(config.getSearchThreads());
+			resetSearcher(); // searchers are re-created with the new slices
+		}
+	}
+
+	/**
+	 * One pass of a parallel search. It has its own copy of the query so that it
+	 * can be canceled without canceling the search.
+	 */
+	private class SearchPass {
+		private final SearchQuery passQuery;
+		private final IndexSearcher indexSearcher;
+		private final boolean exact;
+		private final boolean fuzzy;
+		private Future<SearchResult> future;
+
+		SearchPass(final SearchQuery searchQuery, IndexSearcher indexSearcher, boolean exact, boolean fuzzy) {
+			this.passQuery = new SearchQuery(searchQuery) {
+				@Override
+				public boolean isCanceled() {
+					return super.isCanceled() || searchQuery.isCanceled();
+				}
+			};
+			this.indexSearcher = indexSearcher;
+			this.exact = exact;
+			this.fuzzy = fuzzy;
+		}
+
+		/**
+		 * Runs the pass on the search executor. The pass holds its own reference to
+		 * the reader since it may still be running after the search has returned.
+		 * It searches through a reader and searcher of its own which stop expanding
+		 * terms and collecting hits once the pass is canceled.
+		 */
+		void start() throws IOException {
+			final IndexReader reader = indexSearcher.getIndexReader();
+			QueryTimeout cancelCheck = new QueryTimeout() {
+				public boolean shouldExit() {
+					return passQuery.isCanceled();
+				}
+			};
+
+			final IndexSearcher passSearcher = createIndexSearcher(createCancelableReader(reader, cancelCheck));
+			passSearcher.setTimeout(cancelCheck);
+
+			reader.incRef();
+
+			try {
+				future = searchExecutor.submit(new Callable<SearchResult>() {
+					public SearchResult call() throws Exception {
+						try {
+							if (passQuery.isCanceled()) // waited in the queue while the search went on
+								return null;
+
+							return searchIndex(passQuery, passSearcher, reader, exact, fuzzy); // same documents
+						} catch (ExitingReaderException e) { // canceled
+							return null;
+						} finally {
+							reader.decRef();
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				reader.decRef();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return the result of the pass. Runs the pass on the calling thread if it
+		 *         wasn't started
+		 * @throws Exception
+		 */
+		SearchResult getResult() throws Exception {
+			if (future == null)
+				return searchIndex(passQuery, indexSearcher, exact, fuzzy);
+
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception cause)
+					throw cause;
+				throw e;
+			}
+		}
+
+		/**
+		 * Stops the pass at its next cancellation check. Not interrupted since an
+		 * interrupt would close the index files. A pass that hasn't started yet is
+		 * removed from the executor's queue, so that passes of stale searches don't
+		 * hold up the next search
+		 */
+		void cancel() throws IOException {
+			passQuery.setCanceled(true);
+
+			if (future != null && searchExecutor.remove((Runnable) future)) // never runs
+				indexSearcher.getIndexReader().decRef();
+		}
+	}
+
+	/**
+	 * @return reader that stops enumerating terms and postings once the check
+	 *         tells to exit. The segments of a reader over project shards are
+	 *         wrapped one by one
+	 */
+	private static IndexReader createCancelableReader(IndexReader reader, QueryTimeout cancelCheck)
+			throws IOException {
+		if (reader instanceof DirectoryReader directoryReader)
+			return new ExitableDirectoryReader(directoryReader, cancelCheck);
+
+		List<LeafReaderContext> leaves = reader.leaves();
+		IndexReader[] leafReaders = new IndexReader[leaves.size()];
+
+		for (int i = 0; i < leafReaders.length; i++)
+			leafReaders[i] = new ExitableFilterAtomicReader(leaves.get(i).reader(), cancelCheck);
+
+		return new MultiReader(leafReaders, false);
 	}
 
+	private static class SearchThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+		private final String name;
+		private final int priority;
+
+		/**
+		 * @param name     prefix of the thread names
+		 * @param priority fallback passes run below the first pass on the calling
+		 *                 thread, slices of the same pass do not
+		 */
+		SearchThreadFactory(String name, int priority) {
+			this.name = name;
+			this.priority = priority;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			thread.setPriority(priority);
+			return thread;
+		}
+	}
 }
\ No newline at end of file
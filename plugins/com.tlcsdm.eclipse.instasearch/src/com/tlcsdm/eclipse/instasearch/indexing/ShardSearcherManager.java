@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+
+import com.tlcsdm.eclipse.instasearch.indexing.Searcher.SearcherConfig;
+
+/**
+ * Searchers of the main index and the project shards, read together through a
+ * {@link MultiReader}. On refresh only the shards that changed are re-opened.
+ * Shards that were added or dropped since the last refresh are picked up from
+ * {@link SearcherConfig#getShardWriters()}.
+ */
+class ShardSearcherManager extends ReferenceManager<IndexSearcher> {
+
+	private final SearcherConfig config;
+	private final SearcherFactory searcherFactory;
+
+	/** Near-real-time reader of each shard, the manager holds one reference */
+	private Map<Directory, DirectoryReader> shardReaders = new HashMap<>();
+
+	/**
+	 * @param config          gives the writers of the main index and the shards
+	 * @param searcherFactory
+	 * @throws IOException
+	 */
+	ShardSearcherManager(SearcherConfig config, SearcherFactory searcherFactory) throws IOException {
+		this.config = config;
+		this.searcherFactory = searcherFactory;
+
+		current = openSearcher(null);
+	}
+
+	@Override
+	protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+		return openSearcher(referenceToRefresh.getIndexReader());
+	}
+
+	/**
+	 * @param previousReader or null when opening the first searcher
+	 * @return searcher of all shards, null if none of them changed
+	 */
+	private IndexSearcher openSearcher(IndexReader previousReader) throws IOException {
+		List<IndexWriter> writers = new ArrayList<>();
+		writers.add(config.getIndexWriter());
+		writers.addAll(config.getShardWriters());
+
+		Map<Directory, DirectoryReader> readers = new LinkedHashMap<>();
+		boolean changed = (previousReader == null) || writers.size() != shardReaders.size();
+		boolean success = false;
+
+		try {
+			for (IndexWriter writer : writers) {
+				DirectoryReader reader = shardReaders.get(writer.getDirectory());
+				DirectoryReader newReader;
+
+				if (reader == null)
+					newReader = DirectoryReader.open(writer);
+				else
+					newReader = DirectoryReader.openIfChanged(reader, writer);
+
+				if (newReader == null) { // unchanged, shared with the previous searcher
+					reader.incRef();
+					newReader = reader;
+				} else {
+					changed = true;
+				}
+
+				readers.put(writer.getDirectory(), newReader);
+			}
+
+			if (!changed) {
+				decRefAll(readers);
+				success = true;
+				return null;
+			}
+
+			// the multi reader takes its own reference of each shard reader
+			IndexReader multiReader = new MultiReader(readers.values().toArray(new IndexReader[0]), false);
+			IndexSearcher searcher = SearcherManager.getSearcher(searcherFactory, multiReader, previousReader);
+
+			decRefAll(shardReaders);
+			shardReaders = readers;
+			success = true;
+
+			return searcher;
+		} finally {
+			if (!success)
+				decRefAll(readers);
+		}
+	}
+
+	private static void decRefAll(Map<Directory, DirectoryReader> readers) throws IOException {
+		for (DirectoryReader reader : readers.values())
+			reader.decRef();
+	}
+
+	@Override
+	protected void decRef(IndexSearcher reference) throws IOException {
+		reference.getIndexReader().decRef();
+	}
+
+	@Override
+	protected boolean tryIncRef(IndexSearcher reference) {
+		return reference.getIndexReader().tryIncRef();
+	}
+
+	@Override
+	protected int getRefCount(IndexSearcher reference) {
+		return reference.getIndexReader().getRefCount();
+	}
+
+	@Override
+	protected void afterClose() throws IOException {
+		decRefAll(shardReaders);
+		shardReaders = new HashMap<>();
+	}
+}
@@ -12,36 +12,64 @@
 package com.tlcsdm.eclipse.instasearch.indexing;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.io.StringReader;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.similarities.ClassicSimilarity;
 import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 
+import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.SuffixTokenStream;
+
 /**
  * Indexes documents of type IStorage
  */
@@ -50,13 +78,50 @@ public class StorageIndexer {
 	public static final String NO_VALUE = "<none>";
 	/** */
 	public static final int MIN_WORD_LENGTH = 1;
+	/**
+	 * Version of the indexed document layout. Indexes with a different version
+	 * are rebuilt from scratch
+	 */
+	public static final String INDEX_FORMAT_VERSION = "12";
+	private static final String INDEX_FORMAT_KEY = "formatVersion";
+	private static final String SUFFIXES_KEY = "suffixes";
+	private static final String PROJECT_SHARDS_KEY = "projectShards";
+	private static final String CONTENT_HASH_ALGORITHM = "SHA-1";
+	/** Larger files are not hashed, they are compared by modification stamp only */
+	private static final int MAX_HASHED_SIZE = 1 << 20;
+	/** Share of deleted documents above which they are merged away */
+	private static final double MAX_DELETED_RATIO = 0.2;
+	/** Number of segments above which the index is compacted */
+	private static final int MAX_SEGMENTS = 40;
+	/** Number of segments left by a compaction */
+	private static final int COMPACTED_SEGMENTS = 10;
 	protected static final FileAnalyzer fileAnalyzer = new FileAnalyzer(MIN_WORD_LENGTH);
 
 	private IndexChangeListener changeListener = new NullIndexChangeListener();
 
-	private static final ClassicSimilarity similarity = new ClassicSimilarity();
+	// Word parts stacked on their word count towards the field length, as they
+	// did before Lucene discounted overlapping tokens by default. A file that
+	// spells out the words then ranks above one that only has them inside an
+	// identifier (see SearcherTest). This deliberately differs from the default
+	private static final ClassicSimilarity similarity = new ClassicSimilarity(false);
+
+	// Text with term vectors for highlight support. Offsets are used to find the
+	// matching lines without re-analyzing the file
+	private static final FieldType TEXT_FIELD_TYPE = new FieldType(TextField.TYPE_NOT_STORED);
+	static {
+		TEXT_FIELD_TYPE.setStoreTermVectors(true);
+		TEXT_FIELD_TYPE.setStoreTermVectorPositions(true);
+		TEXT_FIELD_TYPE.setStoreTermVectorOffsets(true);
+		TEXT_FIELD_TYPE.freeze();
+	}
 	private static final int MAX_RETRY_ATTEMPTS = 10;
 	private Directory indexDir;
+	private IndexWriter indexWriter; // shared writer, kept open between updates
+	private volatile boolean indexSuffixes; // as decided when the index was created
+	private volatile boolean projectShards; // as decided when the index was created
+	private final Map<String, Directory> shardDirs = new HashMap<>(); // by project name
+	private final Map<String, IndexWriter> shardWriters = new HashMap<>(); // by project name
+	private final MergeStats mergeStats = new MergeStats();
 
 	/**
 	 * @throws IOException
@@ -78,7 +143,7 @@ public class StorageIndexer {
 		}
 	}
 
-	public Directory getIndexDir() throws IOException {
+	public synchronized Directory getIndexDir() throws IOException {
 		if (indexDir == null)
 			indexDir = new ByteBuffersDirectory();
 
@@ -91,18 +156,275 @@ public class StorageIndexer {
 	 * @throws IOException
 	 */
 	public IndexWriter createIndexWriter(boolean create) throws IOException {
+		IndexWriter indexWriter = new IndexWriter(getIndexDir(),
+				createIndexWriterConfig(create ? IndexWriterConfig.OpenMode.CREATE : IndexWriterConfig.OpenMode.APPEND));
+
+		if (create) { // kept by all later commits
+			indexSuffixes = isSuffixIndexEnabled();
+			projectShards = isProjectShardsEnabled();
+
+			Map<String, String> commitData = new HashMap<>();
+			commitData.put(INDEX_FORMAT_KEY, INDEX_FORMAT_VERSION);
+			commitData.put(SUFFIXES_KEY, Boolean.toString(indexSuffixes));
+			commitData.put(PROJECT_SHARDS_KEY, Boolean.toString(projectShards));
+			indexWriter.setLiveCommitData(commitData.entrySet());
+		} else { // all documents need suffixes for substring searches to use them
+			Map<String, String> commitData = getCommitData(indexWriter);
+			indexSuffixes = Boolean.parseBoolean(commitData.get(SUFFIXES_KEY));
+			projectShards = Boolean.parseBoolean(commitData.get(PROJECT_SHARDS_KEY));
+		}
+
+		return indexWriter;
+	}
+
+	/**
+	 * @param openMode
+	 * @return configuration of a writer of this index, a new one for each writer
+	 */
+	protected IndexWriterConfig createIndexWriterConfig(IndexWriterConfig.OpenMode openMode) {
 		IndexWriterConfig config = new IndexWriterConfig(fileAnalyzer);
 		// OpenMode
-		config.setOpenMode(create ? IndexWriterConfig.OpenMode.CREATE : IndexWriterConfig.OpenMode.APPEND);
+		config.setOpenMode(openMode);
 		// Similarity
 		config.setSimilarity(similarity);
-		// MergePolicy
-		TieredMergePolicy mergePolicy = new TieredMergePolicy();
-		mergePolicy.setSegmentsPerTier(2);
-		mergePolicy.setMaxMergeAtOnce(2);
-		config.setMergePolicy(mergePolicy);
+		// MergePolicy: merges segments of similar size in the background while
+		// indexing, updates don't rewrite the whole index
+		config.setMergePolicy(new TieredMergePolicy());
+		config.setMergeScheduler(mergeStats.createMergeScheduler());
+
+		return config;
+	}
+
+	private static Map<String, String> getCommitData(IndexWriter indexWriter) {
+		Map<String, String> commitData = new HashMap<>();
+		Iterable<Map.Entry<String, String>> liveCommitData = indexWriter.getLiveCommitData();
+
+		if (liveCommitData != null) {
+			for (Map.Entry<String, String> entry : liveCommitData)
+				commitData.put(entry.getKey(), entry.getValue());
+		}
+
+		return commitData;
+	}
+
+	/**
+	 * Whether to index the suffixes of words for fast substring searches. Only
+	 * read when the index is created
+	 * 
+	 * @return true
+	 */
+	protected boolean isSuffixIndexEnabled() {
+		return true;
+	}
+
+	/**
+	 * @return whether the documents are indexed with word suffixes, as decided
+	 *         when the index was created
+	 */
+	protected boolean isIndexingSuffixes() {
+		return indexSuffixes;
+	}
+
+	/**
+	 * Whether to keep the files of each project in an index shard of their own.
+	 * Only read when the index is created
+	 * 
+	 * @return false
+	 */
+	protected boolean isProjectShardsEnabled() {
+		return false;
+	}
+
+	/**
+	 * @param projectName
+	 * @return new directory for the shard of the project
+	 * @throws IOException
+	 */
+	protected Directory createShardDir(String projectName) throws IOException {
+		return new ByteBuffersDirectory();
+	}
+
+	/**
+	 * @return names of the projects that have a shard stored outside of this
+	 *         indexer, opened on first use
+	 */
+	protected Collection<String> listShards() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Called after the files of a shard were deleted
+	 * 
+	 * @param projectName
+	 */
+	protected void deleteShardDir(String projectName) {
+	}
+
+	/**
+	 * @return directories of the shards that have been opened
+	 */
+	protected synchronized Collection<Directory> getShardDirs() {
+		return new ArrayList<>(shardDirs.values());
+	}
+
+	/**
+	 * Returns the shared writer. It is opened on first use and stays open until
+	 * {@link #closeIndexWriter()} so that a batch of updates costs a single
+	 * commit. Changes become visible to readers after {@link #commit()}.
+	 * 
+	 * @return IndexWriter
+	 * @throws IOException
+	 */
+	public synchronized IndexWriter getIndexWriter() throws IOException {
+		if (indexWriter == null || !indexWriter.isOpen())
+			indexWriter = createIndexWriter(!isIndexed());
+
+		return indexWriter;
+	}
+
+	/**
+	 * Returns the shared writer of the files of a project. If the index has a
+	 * shard per project, it is the writer of the project's shard.
+	 * 
+	 * @param projectName project of the files or null for files outside of the
+	 *                    workspace projects (JAR sources)
+	 * @return IndexWriter
+	 * @throws IOException
+	 */
+	public synchronized IndexWriter getIndexWriter(String projectName) throws IOException {
+		IndexWriter mainWriter = getIndexWriter(); // tells whether the index has shards
+
+		if (!projectShards || projectName == null)
+			return mainWriter;
+
+		IndexWriter shardWriter = shardWriters.get(projectName);
+
+		if (shardWriter == null || !shardWriter.isOpen()) {
+			Directory shardDir = shardDirs.get(projectName);
+
+			if (shardDir == null) {
+				shardDir = createShardDir(projectName);
+				shardDirs.put(projectName, shardDir);
+			}
+
+			shardWriter = new IndexWriter(shardDir, createIndexWriterConfig(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+			shardWriters.put(projectName, shardWriter);
+		}
+
+		return shardWriter;
+	}
+
+	/**
+	 * Opens the writers of all project shards. The shards are searched together
+	 * with the main index, which holds the JAR sources.
+	 * 
+	 * @return writers of the project shards or null if the index doesn't have
+	 *         shards
+	 * @throws IOException
+	 */
+	public synchronized List<IndexWriter> getShardWriters() throws IOException {
+		getIndexWriter();
+
+		if (!projectShards)
+			return null;
+
+		for (String projectName : getShardNames())
+			getIndexWriter(projectName);
+
+		return new ArrayList<>(shardWriters.values());
+	}
+
+	/**
+	 * @return whether the index keeps the files of each project in a shard of
+	 *         their own
+	 * @throws IOException
+	 */
+	public synchronized boolean hasProjectShards() throws IOException {
+		getIndexWriter();
+
+		return projectShards;
+	}
+
+	/**
+	 * Opens a near-real-time reader of the main index and all shards
+	 * 
+	 * @return reader to be closed by the caller
+	 * @throws IOException
+	 */
+	protected synchronized IndexReader openReader() throws IOException {
+		List<IndexWriter> writers = new ArrayList<>();
+		writers.add(getIndexWriter());
+
+		if (getShardWriters() != null)
+			writers.addAll(getShardWriters());
+
+		IndexReader[] readers = new IndexReader[writers.size()];
+		for (int i = 0; i < readers.length; i++)
+			readers[i] = DirectoryReader.open(writers.get(i));
 
-		return new IndexWriter(getIndexDir(), config);
+		return (readers.length == 1) ? readers[0] : new MultiReader(readers, true);
+	}
+
+	/**
+	 * Commits pending changes of the shared writers, if there are any
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void commit() throws IOException {
+		for (IndexWriter shardWriter : shardWriters.values())
+			commit(shardWriter);
+
+		commit(indexWriter);
+	}
+
+	private static void commit(IndexWriter writer) throws IOException {
+		if (writer != null && writer.isOpen() && writer.hasUncommittedChanges())
+			writer.commit();
+	}
+
+	/**
+	 * Commits pending changes and closes the shared writer
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void closeIndexWriter() throws IOException {
+		for (Iterator<IndexWriter> it = shardWriters.values().iterator(); it.hasNext();) {
+			IndexWriter shardWriter = it.next();
+			it.remove();
+
+			if (shardWriter.isOpen())
+				shardWriter.close();
+		}
+
+		if (indexWriter == null)
+			return;
+
+		try {
+			if (indexWriter.isOpen())
+				indexWriter.close();
+		} finally {
+			indexWriter = null;
+		}
+	}
+
+	/**
+	 * Commits pending changes and closes the writer and the index directory
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		closeIndexWriter();
+
+		synchronized (this) {
+			for (Directory shardDir : shardDirs.values())
+				shardDir.close();
+			shardDirs.clear();
+
+			if (indexDir != null) {
+				indexDir.close();
+				indexDir = null;
+			}
+		}
 	}
 
 	/**
@@ -113,6 +435,20 @@ public class StorageIndexer {
 		return DirectoryReader.indexExists(getIndexDir());
 	}
 
+	/**
+	 * Check if the index was created with the current document layout
+	 * 
+	 * @return whether the index has the current format version
+	 */
+	public boolean isCurrentFormat() {
+		try {
+			Map<String, String> commitData = SegmentInfos.readLatestCommit(getIndexDir()).getUserData();
+			return INDEX_FORMAT_VERSION.equals(commitData.get(INDEX_FORMAT_KEY));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Check if the index can be read
 	 * 
@@ -136,6 +472,11 @@ public class StorageIndexer {
 
 		RetryingRunnable runnable = new RetryingRunnable() {
 			public void run() throws Exception {
+				closeIndexWriter(); // releases the write lock
+
+				for (String projectName : getShardNames())
+					deleteShard(projectName);
+
 				IndexWriter w = createIndexWriter(true); // open for writing and close (make empty)
 				w.deleteAll();
 				w.commit();
@@ -145,7 +486,6 @@ public class StorageIndexer {
 				for (String file : dir.listAll()) {
 					dir.deleteFile(file);
 				}
-				dir.close();
 			}
 
 			public boolean handleException(Throwable e) {
@@ -158,18 +498,111 @@ public class StorageIndexer {
 		runRetryingRunnable(runnable); // delete index with retry
 	}
 
+	private synchronized Set<String> getShardNames() {
+		Set<String> projectNames = new TreeSet<>(listShards());
+		projectNames.addAll(shardDirs.keySet());
+
+		return projectNames;
+	}
+
+	/**
+	 * Drops the shard of a project with all of its files. The commit is deleted
+	 * first, so the shard is gone even if some files are still open by readers.
+	 * 
+	 * @param projectName
+	 * @throws IOException
+	 */
+	protected synchronized void deleteShard(String projectName) throws IOException {
+		IndexWriter shardWriter = shardWriters.remove(projectName);
+
+		if (shardWriter != null && shardWriter.isOpen())
+			shardWriter.close();
+
+		Directory shardDir = shardDirs.remove(projectName);
+
+		if (shardDir == null)
+			shardDir = createShardDir(projectName);
+
+		try {
+			for (String file : shardDir.listAll()) {
+				if (file.startsWith(IndexFileNames.SEGMENTS))
+					shardDir.deleteFile(file);
+			}
+
+			for (String file : shardDir.listAll()) {
+				try {
+					shardDir.deleteFile(file);
+				} catch (IOException e) { // unreferenced now, removed when the shard is opened again
+				}
+			}
+		} finally {
+			shardDir.close();
+		}
+
+		deleteShardDir(projectName);
+	}
+
 	/**
+	 * Deletes the matching documents from the main index and all shards
+	 * 
+	 * @param term
+	 * @throws IOException
+	 */
+	protected synchronized void deleteDocuments(Term term) throws IOException {
+		List<IndexWriter> writers = getShardWriters();
+
+		getIndexWriter().deleteDocuments(term);
+
+		if (writers != null)
+			for (IndexWriter shardWriter : writers)
+				shardWriter.deleteDocuments(term);
+	}
+
+	/**
+	 * Merges segments if the index or one of its shards has too many of them or
+	 * too many deleted documents. The merges run in the background and are
+	 * committed with the next update
+	 * 
+	 * @return whether merges were started
 	 * @throws Exception
 	 */
-	public void optimizeIndex() throws Exception {
+	public boolean compactIndex() throws Exception {
 		if (!isIndexed())
-			return;
+			return false;
+
+		boolean compacted = compact(getIndexWriter());
+		List<IndexWriter> writers = getShardWriters();
+
+		if (writers != null)
+			for (IndexWriter shardWriter : writers)
+				compacted |= compact(shardWriter);
+
+		return compacted;
+	}
+
+	private boolean compact(IndexWriter w) throws IOException {
+		if (!DirectoryReader.indexExists(w.getDirectory())) // shard not committed yet
+			return false;
+
+		IndexWriter.DocStats docStats = w.getDocStats();
+		int segmentCount = SegmentInfos.readLatestCommit(w.getDirectory()).size();
+
+		if (docStats.maxDoc - docStats.numDocs > MAX_DELETED_RATIO * docStats.maxDoc)
+			w.forceMergeDeletes(false);
+		else if (segmentCount > MAX_SEGMENTS)
+			w.forceMerge(COMPACTED_SEGMENTS, false);
+		else
+			return false;
 
-		IndexWriter w = createIndexWriter(false);
-		w.forceMerge(1, true);
-		w.close();
+		mergeStats.onCompaction();
+		return true;
+	}
 
-		changeListener.onIndexUpdate();
+	/**
+	 * @return counters of the merges of this index
+	 */
+	public MergeStats getMergeStats() {
+		return mergeStats;
 	}
 
 	/**
@@ -198,28 +631,103 @@ public class StorageIndexer {
 	 */
 	public void indexStorage(IndexWriter indexWriter, IStorage storage, String projectName, long modificationStamp,
 			String jar) throws IOException {
-		InputStream contents;
-		try {
-			contents = storage.getContents();
-		} catch (Exception e) {
-			throw new IOException(e);
-		}
+		writeStorage(indexWriter, storage, projectName, modificationStamp, jar, false);
+	}
+
+	/**
+	 * Replaces the indexed document of the storage in one step, so that it stays
+	 * searchable while it is re-indexed. The new document is visible after
+	 * {@link #commit()}
+	 *
+	 * @param indexWriter
+	 * @param storage
+	 * @param projectName
+	 * @param modificationStamp
+	 * @throws IOException
+	 */
+	protected void reindexStorage(IndexWriter indexWriter, IStorage storage, String projectName,
+			long modificationStamp) throws IOException {
+		writeStorage(indexWriter, storage, projectName, modificationStamp, null, true);
+	}
+
+	private void writeStorage(IndexWriter indexWriter, IStorage storage, String projectName, long modificationStamp,
+			String jar, boolean replace) throws IOException {
 		IPath fullPath = storage.getFullPath();
 		String ext = fullPath.getFileExtension();
 		if (ext == null)
 			ext = NO_VALUE;
 
-		try (BufferedReader isReader = new BufferedReader(new InputStreamReader(contents))) {
+		try (InputStream contents = openContents(storage)) {
+			// small files are read at once and hashed, larger ones are streamed
+			byte[] head = contents.readNBytes(MAX_HASHED_SIZE + 1);
+			String hash = (head.length <= MAX_HASHED_SIZE) ? getContentHash(head) : null;
+			BufferedReader isReader = new BufferedReader(
+					new InputStreamReader(new SequenceInputStream(new ByteArrayInputStream(head), contents)));
+
 			Document doc = new Document();
-			doc.add(createLuceneTextField(Field.CONTENTS, isReader));
+			SuffixTokenStream suffixes = null;
+
+			if (indexSuffixes) { // collect the words while the contents are indexed
+				suffixes = new SuffixTokenStream();
+				TokenStream words = fileAnalyzer.tokenStream(Field.CONTENTS.toString(), isReader);
+				doc.add(createLuceneTextField(Field.CONTENTS, suffixes.collect(words)));
+			} else {
+				doc.add(createLuceneTextField(Field.CONTENTS, isReader));
+			}
+
 			doc.add(createLuceneStoredField(Field.FILE, fullPath.toString()));
-			doc.add(createLuceneStoredField(Field.PROJ, projectName));
+			doc.add(new BinaryDocValuesField(Field.FILE.toString(), new BytesRef(fullPath.toString()))); // for results
+			addFacetField(doc, Field.PROJ, projectName);
 			doc.add(createLuceneStoredField(Field.NAME, fullPath.lastSegment()));
-			doc.add(createLuceneStoredField(Field.EXT, ext.toLowerCase(Locale.ENGLISH)));
-			doc.add(createLuceneStoredField(Field.MODIFIED, Long.toString(modificationStamp)));
-			doc.add(createLuceneStoredField(Field.JAR, (jar == null) ? NO_VALUE : jar));
+			addFacetField(doc, Field.EXT, ext.toLowerCase(Locale.ENGLISH));
+			addModifiedFields(doc, modificationStamp);
+			addFacetField(doc, Field.JAR, (jar == null) ? NO_VALUE : jar);
+			if (hash != null)
+				doc.add(new StoredField(Field.HASH.toString(), hash));
+			addFolderFields(doc, fullPath);
+
+			if (suffixes != null) // after the contents
+				doc.add(createLuceneSuffixField(suffixes));
+
+			if (replace)
+				indexWriter.updateDocument(Field.FILE.createTerm(fullPath.toString()), doc);
+			else
+				indexWriter.addDocument(doc);
+		}
+	}
+
+	private static InputStream openContents(IStorage storage) throws IOException {
+		try {
+			return storage.getContents();
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @param storage
+	 * @return hash of the storage contents, as stored in the index
+	 * @throws IOException
+	 */
+	public static String getContentHash(IStorage storage) throws IOException {
+		MessageDigest digest = createContentDigest();
+
+		try (InputStream in = new DigestInputStream(openContents(storage), digest)) {
+			in.transferTo(OutputStream.nullOutputStream()); // digested while reading
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static String getContentHash(byte[] contents) {
+		return HexFormat.of().formatHex(createContentDigest().digest(contents));
+	}
 
-			indexWriter.addDocument(doc);
+	private static MessageDigest createContentDigest() {
+		try {
+			return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JRE has SHA-1
 		}
 	}
 
@@ -310,15 +818,22 @@ public class StorageIndexer {
 		public boolean handleException(Throwable e);
 	}
 
+	/**
+	 * Deletes the storage using the shared writer. The deletion is visible after
+	 * {@link #commit()}
+	 * 
+	 * @param storage
+	 * @throws Exception
+	 */
 	public void deleteStorage(IStorage storage) throws Exception {
-		IndexWriter writer = createIndexWriter(false);
-
 		String filePath = storage.getFullPath().toString();
+		String projectName = null; // JAR sources are in the main index
 
-		Term term = Field.FILE.createTerm(filePath);
-		writer.deleteDocuments(term);
+		if (storage instanceof IResource resource && resource.getProject() != null)
+			projectName = resource.getProject().getName();
 
-		writer.close();
+		Term term = Field.FILE.createTerm(filePath);
+		getIndexWriter(projectName).deleteDocuments(term);
 	}
 
 	private static org.apache.lucene.document.Field createLuceneStoredField(Field fieldName, String value) {
@@ -331,12 +846,68 @@ public class StorageIndexer {
 		return new org.apache.lucene.document.Field(fieldName.toString(), value, fieldType);
 	}
 
+	/**
+	 * Adds a stored field that is also counted per value for the matching
+	 * documents (see {@link FacetCounts})
+	 */
+	private static void addFacetField(Document doc, Field field, String value) {
+		doc.add(createLuceneStoredField(field, value));
+		doc.add(new SortedSetDocValuesField(field.toString(), new BytesRef(value)));
+	}
+
+	/**
+	 * Indexes the modification stamp as a point for range queries and as a doc
+	 * value for sorting by recency, the results and the manifest
+	 */
+	private static void addModifiedFields(Document doc, long modificationStamp) {
+		String fieldName = Field.MODIFIED.toString();
+
+		doc.add(new LongPoint(fieldName, modificationStamp));
+		doc.add(new NumericDocValuesField(fieldName, modificationStamp));
+	}
+
+	/**
+	 * Indexes the folders of a file, so that a folder is found by a single term:
+	 * the path of each ancestor folder (/proj/src/com) and the paths of folders
+	 * below the project relative to each of their ancestors (src/com, com)
+	 */
+	private static void addFolderFields(Document doc, IPath filePath) {
+		String[] folders = filePath.removeLastSegments(1).segments();
+		StringBuilder path = new StringBuilder();
+
+		for (int start = 0; start < folders.length; start++) {
+			path.append('/').append(folders[start]);
+			doc.add(new StringField(Field.DIR.toString(), path.toString(), Store.NO));
+
+			if (start == 0) // the project itself is not a relative folder
+				continue;
+
+			StringBuilder relativePath = new StringBuilder(folders[start]);
+			doc.add(new StringField(Field.DIR.toString(), relativePath.toString(), Store.NO));
+
+			for (int end = start + 1; end < folders.length; end++) {
+				relativePath.append('/').append(folders[end]);
+				doc.add(new StringField(Field.DIR.toString(), relativePath.toString(), Store.NO));
+			}
+		}
+	}
+
 	private static org.apache.lucene.document.Field createLuceneTextField(Field fieldName, Reader reader) {
-		// Create a TextField with term vectors for highlight support
-		FieldType fieldType = new FieldType(TextField.TYPE_NOT_STORED);
-		fieldType.setStoreTermVectors(true);
+		return new org.apache.lucene.document.Field(fieldName.toString(), reader, TEXT_FIELD_TYPE);
+	}
+
+	private static org.apache.lucene.document.Field createLuceneTextField(Field fieldName, TokenStream tokenStream) {
+		return new org.apache.lucene.document.Field(fieldName.toString(), tokenStream, TEXT_FIELD_TYPE);
+	}
+
+	private static org.apache.lucene.document.Field createLuceneSuffixField(TokenStream suffixes) {
+		// only used to find the documents, no positions, norms or term vectors
+		FieldType fieldType = new FieldType();
+		fieldType.setIndexOptions(IndexOptions.DOCS);
+		fieldType.setOmitNorms(true);
+		fieldType.setTokenized(true);
 		fieldType.freeze();
-		return new org.apache.lucene.document.Field(fieldName.toString(), reader, fieldType);
+		return new org.apache.lucene.document.Field(Field.SUFFIX.toString(), suffixes, fieldType);
 	}
 
 	/**
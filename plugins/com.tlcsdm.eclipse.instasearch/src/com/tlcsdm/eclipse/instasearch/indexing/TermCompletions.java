@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Completions of the terms of a field, weighted by the number of documents
+ * containing them and matched case insensitively. Each index segment gets a
+ * sorted array of its terms when a field is first completed. Segments don't
+ * change, so after an index update only the new segments are read (see
+ * {@link #warm(IndexReader)}).
+ */
+class TermCompletions {
+
+	/** Segment dictionaries by segment core and field name */
+	private final Map<Object, Map<String, SegmentTerms>> segments = new ConcurrentHashMap<>();
+
+	/** Fields that were completed, their dictionaries are built on index update */
+	private final Set<String> usedFields = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param reader
+	 * @param field
+	 * @param prefix         case insensitive
+	 * @param maxCompletions
+	 * @return terms starting with prefix, most frequent first
+	 * @throws IOException
+	 */
+	List<String> complete(IndexReader reader, Field field, String prefix, int maxCompletions) throws IOException {
+		String fieldName = field.toString();
+		byte[] key = prefix.toLowerCase(Locale.ENGLISH).getBytes(StandardCharsets.UTF_8);
+
+		usedFields.add(fieldName);
+
+		Map<String, Integer> weights = new HashMap<>();
+
+		for (LeafReaderContext context : reader.leaves()) {
+			SegmentTerms segmentTerms = getSegmentTerms(context.reader(), fieldName);
+
+			if (segmentTerms != null)
+				segmentTerms.complete(key, maxCompletions, weights);
+		}
+
+		List<Map.Entry<String, Integer>> completions = new ArrayList<>(weights.entrySet());
+		Collections.sort(completions, new Comparator<Map.Entry<String, Integer>>() {
+			public int compare(Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2) {
+				int cmp = Integer.compare(e2.getValue(), e1.getValue());
+				return (cmp != 0) ? cmp : e1.getKey().compareTo(e2.getKey());
+			}
+		});
+
+		List<String> terms = new ArrayList<>(Math.min(maxCompletions, completions.size()));
+		for (int i = 0; i < completions.size() && i < maxCompletions; i++)
+			terms.add(completions.get(i).getKey());
+
+		return terms;
+	}
+
+	/**
+	 * Builds the dictionaries of new segments for the fields that were completed
+	 * before, so that completing doesn't wait for it
+	 *
+	 * @param reader
+	 * @throws IOException
+	 */
+	void warm(IndexReader reader) throws IOException {
+		for (LeafReaderContext context : reader.leaves()) {
+			for (String fieldName : usedFields)
+				getSegmentTerms(context.reader(), fieldName);
+		}
+	}
+
+	private SegmentTerms getSegmentTerms(LeafReader reader, String fieldName) throws IOException {
+		IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+
+		if (cacheHelper == null) // can't be cached
+			return SegmentTerms.create(reader, fieldName);
+
+		Map<String, SegmentTerms> fields = segments.get(cacheHelper.getKey());
+
+		if (fields == null) {
+			fields = new ConcurrentHashMap<>();
+
+			if (segments.putIfAbsent(cacheHelper.getKey(), fields) == null)
+				cacheHelper.addClosedListener(new IndexReader.ClosedListener() {
+					public void onClose(IndexReader.CacheKey key) { // merged away or index closed
+						segments.remove(key);
+					}
+				});
+			else
+				fields = segments.get(cacheHelper.getKey());
+		}
+
+		SegmentTerms segmentTerms = fields.get(fieldName);
+
+		if (segmentTerms == null) {
+			segmentTerms = SegmentTerms.create(reader, fieldName);
+
+			if (segmentTerms == null)
+				segmentTerms = SegmentTerms.EMPTY;
+
+			fields.put(fieldName, segmentTerms);
+		}
+
+		return segmentTerms;
+	}
+
+	/**
+	 * Terms of a field in one segment. The lower-case terms are kept sorted in a
+	 * single byte array, so that the terms with a prefix form a range. A tree of
+	 * maximums over the weights gives the most frequent terms of the range without
+	 * visiting all of them
+	 */
+	private static class SegmentTerms {
+
+		static final SegmentTerms EMPTY = new SegmentTerms(new byte[0], new int[1], null, null, new int[0]);
+
+		private final byte[] keys; // lower-case terms
+		private final int[] keyOffsets;
+		private final byte[] terms; // original terms, null if same as keys
+		private final int[] termOffsets;
+		private final int[] weights;
+		private final int[] maxTree; // index of the highest weight in each subtree
+		private final int size;
+
+		private SegmentTerms(byte[] keys, int[] keyOffsets, byte[] terms, int[] termOffsets, int[] weights) {
+			this.keys = keys;
+			this.keyOffsets = keyOffsets;
+			this.terms = terms;
+			this.termOffsets = termOffsets;
+			this.weights = weights;
+			this.size = weights.length;
+			this.maxTree = buildMaxTree();
+		}
+
+		/**
+		 * @return terms of the field or null if the segment doesn't have the field
+		 */
+		static SegmentTerms create(LeafReader reader, String fieldName) throws IOException {
+			Terms fieldTerms = reader.terms(fieldName);
+
+			if (fieldTerms == null)
+				return null;
+
+			List<String> termList = new ArrayList<>();
+			int[] weights = new int[16];
+			boolean lowerCase = true;
+
+			TermsEnum termsEnum = fieldTerms.iterator();
+			for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+				String text = term.utf8ToString();
+				lowerCase &= text.equals(text.toLowerCase(Locale.ENGLISH));
+
+				weights = ArrayUtil.grow(weights, termList.size() + 1);
+				weights[termList.size()] = termsEnum.docFreq();
+				termList.add(text);
+			}
+
+			int size = termList.size();
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++)
+				order[i] = i;
+
+			if (!lowerCase) { // index order is case sensitive
+				final byte[][] sortKeys = new byte[size][];
+				for (int i = 0; i < size; i++)
+					sortKeys[i] = termList.get(i).toLowerCase(Locale.ENGLISH).getBytes(StandardCharsets.UTF_8);
+
+				Arrays.sort(order, new Comparator<Integer>() {
+					public int compare(Integer i1, Integer i2) {
+						return Arrays.compareUnsigned(sortKeys[i1], sortKeys[i2]);
+					}
+				});
+			}
+
+			ByteBlob keys = new ByteBlob(size);
+			ByteBlob terms = lowerCase ? null : new ByteBlob(size);
+			int[] sortedWeights = new int[size];
+
+			for (int i = 0; i < size; i++) {
+				String text = termList.get(order[i]);
+				sortedWeights[i] = weights[order[i]];
+
+				keys.add(text.toLowerCase(Locale.ENGLISH));
+				if (terms != null)
+					terms.add(text);
+			}
+
+			return new SegmentTerms(keys.bytes(), keys.offsets, (terms == null) ? null : terms.bytes(),
+					(terms == null) ? null : terms.offsets, sortedWeights);
+		}
+
+		/**
+		 * Adds the weights of up to maxCompletions most frequent terms starting with
+		 * the key
+		 */
+		void complete(byte[] key, int maxCompletions, Map<String, Integer> completions) {
+			int from = lowerBound(key);
+			int to = from;
+
+			while (to < size && startsWith(to, key)) { // most prefixes have few terms, check some before searching
+				if (to - from == 8) {
+					to = upperBound(key, to);
+					break;
+				}
+				to++;
+			}
+
+			if (to - from <= maxCompletions) {
+				for (int i = from; i < to; i++)
+					addCompletion(completions, i);
+				return;
+			}
+
+			// best first search of the max tree, nodes ordered by their highest weight
+			PriorityQueue<int[]> queue = new PriorityQueue<>(new Comparator<int[]>() {
+				public int compare(int[] n1, int[] n2) {
+					return Integer.compare(weights[maxTree[n2[0]]], weights[maxTree[n1[0]]]);
+				}
+			});
+			queue.add(new int[] { 1, 0, size }); // node, first and end index it covers
+
+			int found = 0;
+			while (!queue.isEmpty() && found < maxCompletions) {
+				int[] node = queue.poll();
+				int start = node[1], end = node[2];
+
+				if (end - start == 1) {
+					addCompletion(completions, start);
+					found++;
+					continue;
+				}
+
+				int mid = (start + end) >>> 1;
+				if (start < to && mid > from)
+					queue.add(new int[] { 2 * node[0], start, mid });
+				if (mid < to && end > from)
+					queue.add(new int[] { 2 * node[0] + 1, mid, end });
+			}
+		}
+
+		private void addCompletion(Map<String, Integer> completions, int index) {
+			String term = getTerm(index);
+			Integer weight = completions.get(term);
+
+			completions.put(term, (weight == null) ? weights[index] : weight + weights[index]);
+		}
+
+		private int[] buildMaxTree() {
+			if (size == 0)
+				return null;
+
+			int[] tree = new int[4 * size];
+			buildMaxTree(tree, 1, 0, size);
+			return tree;
+		}
+
+		private int buildMaxTree(int[] tree, int node, int start, int end) {
+			if (end - start == 1)
+				return tree[node] = start;
+
+			int mid = (start + end) >>> 1;
+			int left = buildMaxTree(tree, 2 * node, start, mid);
+			int right = buildMaxTree(tree, 2 * node + 1, mid, end);
+
+			return tree[node] = (weights[right] > weights[left]) ? right : left;
+		}
+
+		/**
+		 * @return first index whose key is not less than key
+		 */
+		private int lowerBound(byte[] key) {
+			int low = 0, high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+
+				if (Arrays.compareUnsigned(keys, keyOffsets[mid], keyOffsets[mid + 1], key, 0, key.length) < 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+
+			return low;
+		}
+
+		/**
+		 * @return first index from low whose key doesn't start with key
+		 */
+		private int upperBound(byte[] key, int low) {
+			int high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+
+				if (startsWith(mid, key))
+					low = mid + 1;
+				else
+					high = mid;
+			}
+
+			return low;
+		}
+
+		private boolean startsWith(int index, byte[] key) {
+			int start = keyOffsets[index];
+
+			return keyOffsets[index + 1] - start >= key.length
+					&& Arrays.equals(keys, start, start + key.length, key, 0, key.length);
+		}
+
+		private String getTerm(int index) {
+			if (terms == null)
+				return new String(keys, keyOffsets[index], keyOffsets[index + 1] - keyOffsets[index],
+						StandardCharsets.UTF_8);
+
+			return new String(terms, termOffsets[index], termOffsets[index + 1] - termOffsets[index],
+					StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Strings appended to a single byte array
+	 */
+	private static class ByteBlob {
+		private byte[] bytes = new byte[64];
+		private final int[] offsets;
+		private int count;
+
+		ByteBlob(int size) {
+			offsets = new int[size + 1];
+		}
+
+		void add(String text) {
+			byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+			int offset = offsets[count];
+
+			bytes = ArrayUtil.grow(bytes, offset + utf8.length);
+			System.arraycopy(utf8, 0, bytes, offset, utf8.length);
+			offsets[++count] = offset + utf8.length;
+		}
+
+		byte[] bytes() {
+			return ArrayUtil.copyOfSubArray(bytes, 0, offsets[count]);
+		}
+	}
+}
@@ -15,20 +15,20 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.BiPredicate;
 import java.util.regex.Pattern;
 
-import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.PrefixQuery;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -58,8 +58,19 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 
 	private IContentType TEXT_CONTENT_TYPE;
 
+	/** Folder next to the index folder that has a folder for each project shard */
+	private static final String SHARDS_DIR_NAME = "shards";
+
+	/** Extensions of the term dictionary, term index and postings files */
+	private static final String[] PRELOADED_EXTENSIONS = { ".tim", ".tip", ".tmd", ".doc" };
+
+	// no initializer, it is set from the super constructor via getIndexDir()
+	private MMapDirectory indexDirectory;
+
 	private static final ResourceCollector resourceCollector = new ResourceCollector();
 
+	private JarChangeListener jarChangeListener;
+
 	// Prefs
 	private String fileExtensions[] = getIndexableFileExtensions();
 	private List<Pattern> excludedDirRegExes = getExcludedDirsRegExes();
@@ -75,9 +86,94 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 			TEXT_CONTENT_TYPE = Platform.getContentTypeManager().getContentType(IContentTypeManager.CT_TEXT);
 	}
 
+	/**
+	 * Returns the directory of the workspace index. The same memory mapped
+	 * directory is used by the indexer and the searcher.
+	 */
 	@Override
-	public Directory getIndexDir() throws IOException {
-		return FSDirectory.open(getIndexDirLocation().toPath());
+	public synchronized Directory getIndexDir() throws IOException {
+		if (indexDirectory == null) {
+			indexDirectory = new MMapDirectory(getIndexDirLocation().toPath());
+			indexDirectory.setPreload(getPreload());
+		}
+
+		return indexDirectory;
+	}
+
+	@Override
+	protected boolean isSuffixIndexEnabled() {
+		return InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_SUFFIXES);
+	}
+
+	@Override
+	protected boolean isProjectShardsEnabled() {
+		return InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_PER_PROJECT);
+	}
+
+	@Override
+	protected Directory createShardDir(String projectName) throws IOException {
+		MMapDirectory shardDir = new MMapDirectory(new File(getShardsLocation(), projectName).toPath());
+		shardDir.setPreload(getPreload());
+
+		return shardDir;
+	}
+
+	@Override
+	protected Collection<String> listShards() {
+		List<String> projectNames = new ArrayList<>();
+		File[] shardLocations = getShardsLocation().listFiles();
+
+		if (shardLocations != null) {
+			for (File shardLocation : shardLocations) {
+				String[] files = shardLocation.list();
+
+				if (files != null && SegmentInfos.getLastCommitGeneration(files) != -1) // has a commit
+					projectNames.add(shardLocation.getName());
+			}
+		}
+
+		return projectNames;
+	}
+
+	@Override
+	protected void deleteShardDir(String projectName) {
+		new File(getShardsLocation(), projectName).delete(); // left if files are still open
+	}
+
+	/**
+	 * With preloading enabled, the term dictionaries and postings are loaded into
+	 * memory when a reader opens them, so that the first searches don't wait for
+	 * the disk
+	 * 
+	 * @return which files to preload
+	 */
+	private static BiPredicate<String, IOContext> getPreload() {
+		if (!InstaSearchPlugin.getBoolPref(PreferenceConstants.P_PRELOAD_INDEX))
+			return MMapDirectory.BASED_ON_LOAD_IO_CONTEXT;
+
+		return new BiPredicate<String, IOContext>() {
+			public boolean test(String fileName, IOContext context) {
+				for (String ext : PRELOADED_EXTENSIONS) {
+					if (fileName.endsWith(ext))
+						return true;
+				}
+
+				return MMapDirectory.BASED_ON_LOAD_IO_CONTEXT.test(fileName, context);
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		super.close();
+		InstaSearchPlugin.debug("Closed index", getMergeStats()); // merges finished on close
+
+		synchronized (this) {
+			if (indexDirectory != null) {
+				indexDirectory.close();
+				indexDirectory = null;
+			}
+		}
 	}
 
 	/**
@@ -90,14 +186,43 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 
 		deleteIndex();
 
-		IndexWriter indexWriter = createIndexWriter(true);
+		IndexWriter indexWriter = getIndexWriter();
 
 		indexContainers(indexWriter, root, monitor);
 
-		monitor.setTaskName("Optimizing Index");
-		indexWriter.forceMerge(1, true);
+		commit(); // segments are merged in the background while indexing
+
+		getIndexChangeListener().onIndexUpdate();
+
+		monitor.done();
+	}
+
+	/**
+	 * Brings an existing index up to date with the workspace without rebuilding
+	 * it. Only files that were added, changed or removed since they were indexed
+	 * are re-indexed. JAR source attachments are kept as they are.
+	 * 
+	 * @param root
+	 * @param monitor
+	 * @throws Exception
+	 */
+	public void syncIndex(IWorkspaceRoot root, IProgressMonitor monitor) throws Exception {
+
+		IndexManifest manifest;
+		try (IndexReader reader = openReader()) {
+			manifest = IndexManifest.read(reader);
+		}
+
+		indexContainers(root, manifest, monitor);
+
+		if (!monitor.isCanceled()) {
+			InstaSearchPlugin.debug("Removing ", manifest.size(), " deleted files from the index");
+
+			for (String filePath : manifest.getPaths()) // no longer in the workspace or not indexable
+				deleteDocuments(Field.FILE.createTerm(filePath));
+		}
 
-		indexWriter.close();
+		commit();
 
 		getIndexChangeListener().onIndexUpdate();
 
@@ -105,15 +230,28 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 	}
 
 	/**
-	 * Index all containers in the workspace
+	 * Index all containers in the workspace. The files of a project go to the
+	 * project's shard if the index has shards
 	 * 
-	 * @param indexWriter
+	 * @param indexWriter   writer of the main index
 	 * @param workspaceRoot
 	 * @param monitor
 	 * @throws Exception
 	 */
 	protected void indexContainers(IndexWriter indexWriter, IWorkspaceRoot workspaceRoot, IProgressMonitor monitor)
 			throws Exception {
+		indexContainers(workspaceRoot, null, monitor);
+	}
+
+	/**
+	 * @param workspaceRoot
+	 * @param manifest      indexed files to skip if unchanged, or null to index
+	 *                      all files
+	 * @param monitor
+	 * @throws Exception
+	 */
+	private void indexContainers(IWorkspaceRoot workspaceRoot, IndexManifest manifest, IProgressMonitor monitor)
+			throws Exception {
 
 		resourceCollector.clear();
 		resourceCollector.setExcludedDirRegExes(excludedDirRegExes);
@@ -121,18 +259,37 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 
 		monitor.beginTask("File Indexing", resourceCollector.getContainers().size());
 
-		for (IContainer container : resourceCollector.getContainers()) {
-			if (monitor.isCanceled())
-				break;
+		long startTime = System.currentTimeMillis();
+		IndexingExecutor executor = createIndexingExecutor();
+
+		try {
+			for (IContainer container : resourceCollector.getContainers()) {
+				if (monitor.isCanceled())
+					break;
 
-			monitor.setTaskName("Indexing: " + container.getProject().getName() + " - " + container.getName());
-			indexContainer(indexWriter, container, monitor);
-			monitor.worked(1);
+				monitor.setTaskName("Indexing: " + container.getProject().getName() + " - " + container.getName());
+				indexContainer(executor, container, manifest, monitor);
+				monitor.worked(1);
+			}
+		} finally {
+			monitor.setTaskName("Indexing: waiting for remaining files");
+			executor.finish(monitor);
 		}
 
+		InstaSearchPlugin.debug("Indexed ", executor.getIndexedCount(), " files in ",
+				System.currentTimeMillis() - startTime, "ms using ", getIndexingThreadCount(), " threads");
+
 		monitor.done();
 	}
 
+	private static int getIndexingThreadCount() {
+		return Math.max(1, InstaSearchPlugin.getIntPref(PreferenceConstants.P_INDEXING_THREADS));
+	}
+
+	private static IndexingExecutor createIndexingExecutor() {
+		return new IndexingExecutor(getIndexingThreadCount());
+	}
+
 	private File getIndexDirLocation() {
 		File location = InstaSearchPlugin.getIndexDirLocation();
 
@@ -142,9 +299,8 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 		return location;
 	}
 
-	@Override
-	public boolean isIndexed() throws IOException {
-		return DirectoryReader.indexExists(getIndexDir()) && super.isIndexed();
+	private File getShardsLocation() {
+		return new File(getIndexDirLocation().getParentFile(), SHARDS_DIR_NAME);
 	}
 
 	private static List<Pattern> getExcludedDirsRegExes() {
@@ -230,7 +386,7 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 		return false;
 	}
 
-	private void indexFile(IndexWriter indexWriter, IFile file) throws Exception {
+	private void indexFile(IFile file) throws Exception {
 
 		if (!file.isAccessible())
 			return;
@@ -248,10 +404,15 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 		if (f == null || !f.canRead())
 			return;
 
-		indexStorageWithRetry(indexWriter, file, file.getProject().getName(), file.getLocalTimeStamp(), null);
+		String projectName = file.getProject().getName();
+
+		indexStorageWithRetry(getIndexWriter(projectName), file, projectName, file.getLocalTimeStamp(), null);
 	}
 
 	/**
+	 * Re-indexes the file using the shared writer. Changes are visible after
+	 * {@link #commit()}
+	 * 
 	 * @param file
 	 * @throws Exception
 	 */
@@ -265,11 +426,8 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 		if (!isIndexable(file))
 			return;
 
-		if (file.isAccessible() && !file.isDerived(IResource.CHECK_ANCESTORS)) {
-			IndexWriter w = createIndexWriter(false);
-			indexFile(w, file);
-			w.close();
-		}
+		if (file.isAccessible() && !file.isDerived(IResource.CHECK_ANCESTORS))
+			indexFile(file);
 
 	}
 
@@ -285,9 +443,7 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 		if (!isIndexed())
 			return;
 
-		DirectoryReader reader = DirectoryReader.open(getIndexDir());
-		deleteFolder(reader, folder);
-		reader.close();
+		deleteFolder(folder);
 
 		if (!folder.isAccessible())
 			return;
@@ -296,15 +452,17 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 		resourceCollector.setExcludedDirRegExes(excludedDirRegExes);
 		folder.accept(resourceCollector); // get also subfolders
 
-		IndexWriter w = createIndexWriter(false);
+		IndexingExecutor executor = createIndexingExecutor();
 
-		for (IContainer container : resourceCollector.getContainers()) {
-			if (isExcluded(container))
-				continue;
-			indexContainer(w, container, monitor);
+		try {
+			for (IContainer container : resourceCollector.getContainers()) {
+				if (isExcluded(container))
+					continue;
+				indexContainer(executor, container, null, monitor);
+			}
+		} finally {
+			executor.finish(monitor);
 		}
-
-		w.close();
 	}
 
 	/**
@@ -320,6 +478,9 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 	}
 
 	/**
+	 * Deletes and re-indexes the files of a project. Only deletes them if the
+	 * project was closed or deleted
+	 * 
 	 * @param project
 	 * @param monitor
 	 * @throws Exception
@@ -332,28 +493,66 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 		deleteProject(project);
 
 		if (project.exists() && project.isAccessible() && project.isOpen()) {
-			IndexWriter w = createIndexWriter(false);
+			IndexingExecutor executor = createIndexingExecutor();
 
 			resourceCollector.clear();
 			resourceCollector.setExcludedDirRegExes(excludedDirRegExes);
 			project.accept(resourceCollector);
 
-			for (IContainer container : resourceCollector.getContainers()) {
-				indexContainer(w, container, monitor);
+			try {
+				for (IContainer container : resourceCollector.getContainers()) {
+					indexContainer(executor, container, null, monitor);
+				}
+			} finally {
+				executor.finish(monitor);
 			}
-
-			w.close();
 		}
 
 	}
 
 	/**
-	 * @param w
+	 * Deletes the indexed sources of a JAR. The JDT indexer indexes them again if
+	 * the JAR is still on the classpath
+	 * 
+	 * @param jarName
+	 * @param monitor
+	 * @throws Exception
+	 */
+	public void updateJar(String jarName, IProgressMonitor monitor) throws Exception {
+
+		if (!isIndexed())
+			return;
+
+		getIndexWriter().deleteDocuments(Field.JAR.createTerm(jarName)); // JAR sources are in the main index
+	}
+
+	/**
+	 * @param jarChangeListener gets the JARs that need to be re-indexed
+	 */
+	public void setJarChangeListener(JarChangeListener jarChangeListener) {
+		this.jarChangeListener = jarChangeListener;
+	}
+
+	/**
+	 * @param jarName JAR that was added to or removed from the classpath, or
+	 *                whose contents or source attachment changed
+	 */
+	protected void fireJarChange(String jarName) {
+		if (jarChangeListener != null)
+			jarChangeListener.onJarChange(jarName);
+	}
+
+	/**
+	 * Submits indexable files of the container to the executor
+	 * 
+	 * @param executor
 	 * @param container
+	 * @param manifest  indexed files to skip if unchanged, or null
 	 * @param monitor
 	 * @throws Exception
 	 */
-	private void indexContainer(IndexWriter w, IContainer container, IProgressMonitor monitor) throws Exception {
+	private void indexContainer(IndexingExecutor executor, IContainer container, IndexManifest manifest,
+			IProgressMonitor monitor) throws Exception {
 		if (!container.isAccessible() || container.isDerived(IResource.CHECK_ANCESTORS))
 			return;
 
@@ -367,10 +566,33 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 			if (member.getType() != IResource.FILE || !member.isAccessible() || member.isDerived())
 				continue;
 
-			IFile file = (IFile) member;
+			final IFile file = (IFile) member;
+
+			if (!isIndexable(file))
+				continue;
+
+			// the manifest is only accessed from this thread
+			final IndexManifest.Entry indexed = (manifest == null) ? null
+					: manifest.remove(file.getFullPath().toString());
 
-			if (isIndexable(file))
-				indexFile(w, file);
+			executor.submit(new IndexingExecutor.IndexingTask() {
+				public void run() throws Exception {
+					if (indexed != null) {
+						if (indexed.isStampUnchanged(file))
+							return;
+
+						if (indexed.isContentUnchanged(file)) { // only touched, replaced to index the new stamp
+							String projectName = file.getProject().getName();
+							reindexStorage(getIndexWriter(projectName), file, projectName, file.getLocalTimeStamp());
+							return;
+						}
+
+						deleteStorage(file);
+					}
+
+					indexFile(file);
+				}
+			});
 		}
 	}
 
@@ -397,29 +619,21 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 	}
 
 	/**
-	 * @throws IOException
+	 * Deletes all files under the container
 	 * 
+	 * @param container
+	 * @throws IOException
 	 */
-	private void deleteFolder(DirectoryReader reader, IContainer container) throws Exception {
-
-		IndexSearcher searcher = new IndexSearcher(reader);
-		String path = container.getFullPath().addTrailingSeparator().toString();
-		TopDocs topDocs = searcher.search(new PrefixQuery(Field.FILE.createTerm(path)), reader.numDocs());
-
-		// Use IndexWriter to delete documents
-		IndexWriter writer = createIndexWriter(false);
-		for (ScoreDoc doc : topDocs.scoreDocs) {
-			int docNum = doc.doc;
-			String filePath = reader.storedFields().document(docNum).get(Field.FILE.toString());
-			if (filePath != null) {
-				writer.deleteDocuments(Field.FILE.createTerm(filePath));
-			}
-		}
-		writer.close();
+	private void deleteFolder(IContainer container) throws IOException {
+		String path = container.getFullPath().toString();
+
+		// files of the folder and its subfolders
+		getIndexWriter(container.getProject().getName()).deleteDocuments(Field.DIR.createTerm(path));
 	}
 
 	/**
-	 * Delete all documents belonging to a project from the index.
+	 * Delete all documents belonging to a project from the index. If the index
+	 * has shards, the project's shard is dropped as a whole.
 	 * 
 	 * @param project
 	 * @return 1 if deletion was attempted, 0 otherwise. Note: In Lucene 9.x,
@@ -428,13 +642,13 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 	 * @throws Exception
 	 */
 	public int deleteProject(IProject project) throws Exception {
-		IndexWriter writer = createIndexWriter(false);
-		String filePath = project.getFullPath().toString();
-
-		Term term = Field.PROJ.createTerm(filePath);
-		long seqNum = writer.deleteDocuments(term);
+		if (hasProjectShards()) {
+			deleteShard(project.getName());
+			return 1;
+		}
 
-		writer.close();
+		Term term = Field.PROJ.createTerm(project.getName()); // as indexed by indexFile
+		long seqNum = getIndexWriter().deleteDocuments(term);
 
 		// Return 1 if deletion was successful (seqNum > 0), otherwise 0
 		return seqNum > 0 ? 1 : 0;
@@ -478,7 +692,30 @@ public class WorkspaceIndexer extends StorageIndexer implements ISchedulingRule,
 			excludedDirRegExes = getExcludedDirsRegExes();
 		else if (PreferenceConstants.P_INDEX_EMPTY_EXTENSION.equals(prop))
 			indexEmptyExtension = InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_EMPTY_EXTENSION);
+		else if (PreferenceConstants.P_PRELOAD_INDEX.equals(prop))
+			setPreload();
+
+	}
+
+	/**
+	 * Applies to index files opened after the change
+	 */
+	private synchronized void setPreload() {
+		if (indexDirectory != null)
+			indexDirectory.setPreload(getPreload());
 
+		for (Directory shardDir : getShardDirs())
+			((MMapDirectory) shardDir).setPreload(getPreload());
+	}
+
+	/**
+	 * Listener that gets called when the indexed sources of a JAR are out of date
+	 */
+	public interface JarChangeListener {
+		/**
+		 * @param jarName
+		 */
+		public void onJarChange(String jarName);
 	}
 
 	/**
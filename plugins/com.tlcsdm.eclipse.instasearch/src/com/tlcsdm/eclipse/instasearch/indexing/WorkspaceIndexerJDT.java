@@ -12,6 +12,7 @@
 package com.tlcsdm.eclipse.instasearch.indexing;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedList;
@@ -19,6 +20,7 @@ import java.util.List;
 import java.util.TreeSet;
 
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.resources.IWorkspaceRoot;
@@ -27,9 +29,12 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.core.IElementChangedListener;
 import org.eclipse.jdt.core.IJarEntryResource;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
 import org.eclipse.jdt.core.IJavaModel;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
@@ -47,7 +52,9 @@ import com.tlcsdm.eclipse.instasearch.prefs.PreferenceConstants;
  */
 
 @SuppressWarnings("restriction")
-public class WorkspaceIndexerJDT extends WorkspaceIndexer {
+public class WorkspaceIndexerJDT extends WorkspaceIndexer implements IElementChangedListener {
+
+	private final JarIndexCache jarIndexCache = new JarIndexCache(JarIndexCache.getDefaultLocation());
 
 	/**
 	 * @throws Exception
@@ -58,6 +65,82 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 
 		if (JavaCore.getJavaCore() == null) // check that we have JDT. throws exception if we don't have JavaCore
 			throw new RuntimeException("JDT not detected");
+
+		JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		JavaCore.removeElementChangedListener(this);
+
+		super.close();
+	}
+
+	/**
+	 * Reports the JARs that were added to or removed from a classpath, changed or
+	 * got a different source attachment, so that only they are re-indexed
+	 */
+	public void elementChanged(ElementChangedEvent event) {
+		if (!InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_ARCHIVES))
+			return;
+
+		visitDelta(event.getDelta());
+	}
+
+	private void visitDelta(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_MODEL:
+		case IJavaElement.JAVA_PROJECT:
+			for (IJavaElementDelta childDelta : delta.getAffectedChildren())
+				visitDelta(childDelta);
+			break;
+
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			IPackageFragmentRoot root = (IPackageFragmentRoot) element;
+
+			if (root.isArchive() && isJarChange(delta))
+				fireJarChange(getJarName(root));
+			break;
+
+		default: // changes inside of the JAR are reported on the root
+			break;
+		}
+	}
+
+	private static boolean isJarChange(IJavaElementDelta delta) {
+		if (delta.getKind() == IJavaElementDelta.ADDED || delta.getKind() == IJavaElementDelta.REMOVED)
+			return true;
+
+		return (delta.getFlags() & (IJavaElementDelta.F_ADDED_TO_CLASSPATH
+				| IJavaElementDelta.F_REMOVED_FROM_CLASSPATH | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED
+				| IJavaElementDelta.F_SOURCEATTACHED | IJavaElementDelta.F_SOURCEDETACHED)) != 0;
+	}
+
+	/**
+	 * Deletes the indexed sources of the JAR and indexes them again if a project
+	 * still has the JAR with a source attachment
+	 */
+	@Override
+	public void updateJar(String jarName, IProgressMonitor monitor) throws Exception {
+
+		if (!isIndexed())
+			return;
+
+		super.updateJar(jarName, monitor);
+
+		if (!InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_ARCHIVES))
+			return;
+
+		IJavaModel javaModel = JavaCore.create(InstaSearchPlugin.getWorkspaceRoot());
+
+		for (IPackageFragmentRoot jar : getJars(javaModel)) {
+			if (getJarName(jar).equals(jarName)) {
+				indexArchive(getIndexWriter(), jar, monitor);
+				break;
+			}
+		}
 	}
 
 	@Override
@@ -77,11 +160,13 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 
 			monitor.beginTask("Indexing JAR Source Attachements (" + jars.size() + ")", jars.size());
 
+			if (InstaSearchPlugin.getBoolPref(PreferenceConstants.P_JAR_INDEX_CACHE))
+				jarIndexCache.prune();
+
 			for (IPackageFragmentRoot jar : jars) {
 				monitor.worked(1);
 
-				indexClassFiles(indexWriter, jar, monitor);
-				indexNonJavaResources(indexWriter, jar, monitor);
+				indexArchive(indexWriter, jar, monitor);
 
 				if (monitor.isCanceled())
 					break;
@@ -98,6 +183,97 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 		monitor.done();
 	}
 
+	private void indexArchive(IndexWriter indexWriter, IPackageFragmentRoot jar, IProgressMonitor monitor)
+			throws Exception {
+		if (InstaSearchPlugin.getBoolPref(PreferenceConstants.P_JAR_INDEX_CACHE))
+			indexJarCached(indexWriter, jar, monitor);
+		else
+			indexJar(indexWriter, jar, monitor);
+	}
+
+	private void indexJar(IndexWriter indexWriter, IPackageFragmentRoot jar, IProgressMonitor monitor)
+			throws Exception {
+		indexClassFiles(indexWriter, jar, monitor);
+		indexNonJavaResources(indexWriter, jar, monitor);
+	}
+
+	/**
+	 * Adds the index of the JAR from the cache shared by all workspaces. The JAR
+	 * is indexed into the cache first if no workspace has indexed it yet
+	 * 
+	 * @param indexWriter
+	 * @param jar
+	 * @param monitor
+	 * @throws Exception
+	 */
+	private void indexJarCached(IndexWriter indexWriter, final IPackageFragmentRoot jar,
+			final IProgressMonitor monitor) throws Exception {
+
+		String key = getJarIndexKey(jar);
+
+		if (key == null) { // source attachment is not a file
+			indexJar(indexWriter, jar, monitor);
+			return;
+		}
+
+		File cachedIndex = jarIndexCache.get(key);
+
+		if (cachedIndex == null) {
+			cachedIndex = jarIndexCache.put(key, createIndexWriterConfig(IndexWriterConfig.OpenMode.CREATE),
+					new JarIndexCache.IndexBuilder() {
+						public boolean build(IndexWriter writer) throws Exception {
+							indexJar(writer, jar, monitor);
+							return !monitor.isCanceled();
+						}
+					});
+		}
+
+		if (cachedIndex != null)
+			JarIndexCache.addIndex(indexWriter, cachedIndex);
+	}
+
+	/**
+	 * The documents of a JAR depend on its contents, its location (the file paths)
+	 * and the indexing settings, but not on the workspace
+	 * 
+	 * @param jar
+	 * @return key of the JAR's index in the cache or null if it can't be cached
+	 * @throws IOException
+	 * @throws JavaModelException
+	 */
+	private String getJarIndexKey(IPackageFragmentRoot jar) throws IOException, JavaModelException {
+		File jarFile = getFile(jar.getPath());
+		File sourceFile = getFile(jar.getSourceAttachmentPath());
+
+		if (jarFile == null || sourceFile == null)
+			return null;
+
+		String settings = INDEX_FORMAT_VERSION + "|" + isIndexingSuffixes() + "|" + jar.getPath() + "|"
+				+ jar.getSourceAttachmentRootPath() + "|"
+				+ InstaSearchPlugin.getDefault().getPreferenceStore()
+						.getString(PreferenceConstants.P_INDEXABLE_EXTENSIONS)
+				+ "|" + InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_EMPTY_EXTENSION);
+
+		return JarIndexCache.getKey(settings, jarFile, sourceFile);
+	}
+
+	/**
+	 * @param path workspace path or file system path of an external file
+	 * @return the file or null if it is not a file
+	 */
+	private static File getFile(IPath path) {
+		if (path == null)
+			return null;
+
+		IResource resource = InstaSearchPlugin.getWorkspaceRoot().findMember(path);
+		IPath location = (resource != null) ? resource.getLocation() : path;
+
+		if (location == null || !location.toFile().isFile())
+			return null;
+
+		return location.toFile();
+	}
+
 	/**
 	 * Index non .class files
 	 * 
@@ -133,7 +309,6 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 			IProgressMonitor monitor) throws Exception {
 
 		String jarName = getJarName(jar);
-		String projectPath = getProjectPath(jar);
 
 		for (IJarEntryResource resource : resources) {
 			if (monitor.isCanceled())
@@ -141,7 +316,7 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 
 			if (resource.isFile()) {
 				if (isIndexable(resource))
-					indexStorageWithRetry(indexWriter, resource, projectPath, IResource.NULL_STAMP, jarName);
+					indexStorageWithRetry(indexWriter, resource, jarName, IResource.NULL_STAMP, jarName);
 			} else {
 				indexNonJavaResources(indexWriter, jar, resource.getChildren(), monitor);
 			}
@@ -159,14 +334,6 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 		return isIndexableExtension(ext);
 	}
 
-	/**
-	 * @param jar
-	 * @return
-	 */
-	private String getProjectPath(IPackageFragmentRoot jar) {
-		return jar.getJavaProject().getElementName() + "/" + getJarName(jar);
-	}
-
 	/**
 	 * @param jar
 	 * @return
@@ -179,7 +346,6 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 			throws Exception {
 
 		String jarName = getJarName(jar);
-		String projectPath = getProjectPath(jar);
 
 		for (IJavaElement pkgRootChild : jar.getChildren()) {
 
@@ -195,7 +361,7 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 					ClassFileSourceStorage classFileSourceStorage = new ClassFileSourceStorage(classFile);
 
 					if (classFileSourceStorage.hasSource())
-						indexStorageWithRetry(indexWriter, classFileSourceStorage, projectPath, IResource.NULL_STAMP,
+						indexStorageWithRetry(indexWriter, classFileSourceStorage, jarName, IResource.NULL_STAMP,
 								jarName);
 				} catch (Exception e) {
 					// Issue #69. Avoid Ex where Eclipse has trouble loading a source file.
@@ -209,6 +375,24 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 
 	}
 
+	/**
+	 * JAR sources are indexed once for all projects, any project having the JAR
+	 * can open them
+	 * 
+	 * @param javaModel
+	 * @param jarName
+	 * @return project with the JAR and its source attachment or null
+	 * @throws JavaModelException
+	 */
+	private IJavaProject getJarProject(IJavaModel javaModel, String jarName) throws JavaModelException {
+		for (IPackageFragmentRoot jar : getJars(javaModel)) {
+			if (getJarName(jar).equals(jarName))
+				return jar.getJavaProject();
+		}
+
+		return null;
+	}
+
 	private List<IPackageFragmentRoot> getJars(IJavaModel javaModel) throws JavaModelException {
 
 		IJavaProject[] projects = javaModel.getJavaProjects();
@@ -287,8 +471,10 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 		IWorkspaceRoot workspaceRoot = InstaSearchPlugin.getWorkspaceRoot();
 		IJavaModel javaModel = JavaCore.create(workspaceRoot);
 
-		String javaProjectName = doc.getProject().segment(0);
-		IJavaProject javaProj = javaModel.getJavaProject(javaProjectName);
+		IJavaProject javaProj = getJarProject(javaModel, doc.getJarName());
+
+		if (javaProj == null)
+			return null;
 
 		if (!javaProj.isOpen())
 			javaProj.open(new NullProgressMonitor());
@@ -372,11 +558,10 @@ public class WorkspaceIndexerJDT extends WorkspaceIndexer {
 		IWorkspaceRoot workspaceRoot = InstaSearchPlugin.getWorkspaceRoot();
 		IJavaModel javaModel = JavaCore.create(workspaceRoot);
 
-		String javaProjectName = doc.getProject().segment(0);
-		IJavaProject proj = javaModel.getJavaProject(javaProjectName);
+		IJavaProject proj = getJarProject(javaModel, doc.getJarName());
 
 		if (proj == null)
-			throw new Exception("Project " + javaProjectName + " not found");
+			throw new Exception("Project with " + doc.getJarName() + " not found");
 
 		if (!proj.isOpen())
 			proj.open(new NullProgressMonitor());
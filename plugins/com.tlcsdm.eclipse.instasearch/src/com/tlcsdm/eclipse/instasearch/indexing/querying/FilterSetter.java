@@ -11,6 +11,7 @@
  */
 package com.tlcsdm.eclipse.instasearch.indexing.querying;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,6 +34,13 @@ public class FilterSetter extends QueryVisitor {
 	public FilterSetter() {
 	}
 
+	/**
+	 * @param filter field values to filter by. The map is copied
+	 */
+	public FilterSetter(Map<Field, Set<String>> filter) {
+		setFilter(filter);
+	}
+
 	@Override
 	public Query visit(TermQuery termQuery, Field field) {
 		return addFilters(termQuery, field);
@@ -95,10 +103,11 @@ public class FilterSetter extends QueryVisitor {
 	}
 
 	/**
-	 * @param filter
+	 * @param filter field values to filter by. The map is copied since filters
+	 *               are removed from it while visiting
 	 */
 	public void setFilter(Map<Field, Set<String>> filter) {
-		this.filter = filter;
+		this.filter = new HashMap<Field, Set<String>>(filter);
 	}
 
 }
@@ -20,7 +20,9 @@ import org.apache.lucene.search.WildcardQuery;
 import com.tlcsdm.eclipse.instasearch.indexing.Field;
 
 /**
- * 
+ * Normalizes folder queries. The dir field has the absolute paths of the
+ * folders of each file (/proj/src/com) and their relative paths (src/com, com),
+ * so dir:/proj/src, dir:src/com and dir:com* are looked up directly
  */
 public class FolderSearcher extends QueryVisitor {
 
@@ -29,17 +31,8 @@ public class FolderSearcher extends QueryVisitor {
 
 		Term t = termQuery.getTerm();
 
-		if (field == Field.DIR) {
-			if (t.text().startsWith("/")) // already absolute
-			{
-				Term fileTerm = Field.FILE.createTerm(t.text());
-				return new PrefixQuery(fileTerm);
-			}
-
-			Term fileTerm = Field.FILE.createTerm("/*/" + t.text() + "/*");
-
-			return new WildcardQuery(fileTerm);
-		}
+		if (field == Field.DIR && isFolderPath(t.text()))
+			return new TermQuery(Field.DIR.createTerm(removeTrailingSeparator(t.text())));
 
 		return super.visit(termQuery, field);
 	}
@@ -48,19 +41,8 @@ public class FolderSearcher extends QueryVisitor {
 	public Query visit(PrefixQuery prefixQuery, Field field) {
 		Term t = prefixQuery.getPrefix();
 
-		if (field == Field.DIR) {
-			String text = t.text();
-
-			if (text.startsWith("/")) // already absolute
-			{
-				Term fileTerm = Field.FILE.createTerm(text);
-				return new PrefixQuery(fileTerm); // change field
-			}
-
-			Term fileTerm = Field.FILE.createTerm("/*/" + text + "*/*"); // meant to end with * already
-
-			return new WildcardQuery(fileTerm);
-		}
+		if (field == Field.DIR && isFolderPath(t.text()))
+			return new PrefixQuery(Field.DIR.createTerm(removeTrailingSeparator(t.text())));
 
 		return super.visit(prefixQuery, field);
 	}
@@ -70,21 +52,17 @@ public class FolderSearcher extends QueryVisitor {
 
 		Term t = wildcardQuery.getTerm();
 
-		if (field == Field.DIR) {
-			String text = t.text();
-
-			if (text.startsWith("/")) // already absolute
-			{
-				Term fileTerm = Field.FILE.createTerm(text);
-				return new WildcardQuery(fileTerm); // change field
-			}
-
-			Term fileTerm = Field.FILE.createTerm("/*/" + t.text());
-
-			return new WildcardQuery(fileTerm);
-		}
+		if (field == Field.DIR && isFolderPath(t.text()))
+			return new WildcardQuery(Field.DIR.createTerm(removeTrailingSeparator(t.text())));
 
 		return super.visit(wildcardQuery, field);
 	}
 
+	private static boolean isFolderPath(String text) {
+		return text.length() > 1 && text.endsWith("/");
+	}
+
+	private static String removeTrailingSeparator(String text) {
+		return text.substring(0, text.length() - 1);
+	}
 }
@@ -35,6 +35,11 @@ public class LastTermQueryPrefixer extends QueryVisitor {
 		this.minTermLength = minTermLength;
 	}
 
+	@Override
+	public void init(Query query) {
+		clauseCount = 0;
+	}
+
 	@Override
 	public Query visit(TermQuery termQuery, Field field) {
 
@@ -18,21 +18,22 @@ import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TermRangeQuery;
-import org.apache.lucene.util.BytesRef;
 
 import com.tlcsdm.eclipse.instasearch.indexing.Field;
 
 /**
- * Replaces named modified field values with millisecond range queries
+ * Replaces named modified field values with millisecond range queries on the
+ * indexed modification time points
  */
 public class ModifiedTimeConverter extends QueryVisitor {
 
 	private static ArrayList<String> intervalNames = new ArrayList<String>();
-	private static Calendar cal = Calendar.getInstance();
 
 	static {
 		for (Interval interval : Interval.values())
@@ -92,6 +93,7 @@ public class ModifiedTimeConverter extends QueryVisitor {
 			return super.visit(termQuery, termField);
 
 		long start = 0, end = System.currentTimeMillis();
+		Calendar cal = Calendar.getInstance(); // not thread-safe, so not shared
 		cal.setTimeInMillis(end);
 
 		switch (interval) {
@@ -109,9 +111,11 @@ public class ModifiedTimeConverter extends QueryVisitor {
 			start = end - multiplier * interval.millis;
 		}
 
-		String field = Field.MODIFIED.name().toLowerCase(Locale.ENGLISH);
+		String fieldName = Field.MODIFIED.toString();
 
-		return new TermRangeQuery(field, new BytesRef(Long.toString(start)), new BytesRef(Long.toString(end)), true, true);
+		// points when the range selects few documents, doc values when other clauses do
+		return new IndexOrDocValuesQuery(LongPoint.newRangeQuery(fieldName, start, end),
+				NumericDocValuesField.newSlowRangeQuery(fieldName, start, end));
 	}
 
 	private static Interval getIntervalByName(String intervalName) {
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing.querying;
+
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.WildcardQuery;
+
+import com.tlcsdm.eclipse.instasearch.indexing.Field;
+import com.tlcsdm.eclipse.instasearch.indexing.tokenizers.SuffixTokenStream;
+
+/**
+ * Replaces substring queries of contents (*term*) by a prefix query of the
+ * indexed word suffixes (suffix:term*). Both match the same documents but the
+ * wildcard query has to go through all the words of the index.
+ *
+ * Only to be used if the index has word suffixes
+ */
+public class SubstringSearcher extends QueryVisitor {
+
+	@Override
+	public Query visit(WildcardQuery wildcardQuery, Field field) {
+
+		if (field != Field.CONTENTS)
+			return wildcardQuery;
+
+		String text = wildcardQuery.getTerm().text();
+
+		if (text.length() < SuffixTokenStream.MIN_LENGTH + 2 || !text.startsWith("*") || !text.endsWith("*"))
+			return wildcardQuery;
+
+		String substring = text.substring(1, text.length() - 1);
+
+		for (int i = 0; i < substring.length(); i++) {
+			char c = substring.charAt(i);
+
+			if (c == WildcardQuery.WILDCARD_STRING || c == WildcardQuery.WILDCARD_CHAR
+					|| c == WildcardQuery.WILDCARD_ESCAPE)
+				return wildcardQuery; // not a plain substring
+		}
+
+		return new PrefixQuery(Field.SUFFIX.createTerm(substring));
+	}
+}
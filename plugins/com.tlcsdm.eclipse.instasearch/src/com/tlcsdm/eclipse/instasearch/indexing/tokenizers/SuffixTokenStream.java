@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing.tokenizers;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Returns the suffixes of the distinct words of another token stream, eg.
+ * driveletter, riveletter, iveletter, ... ter. A word containing a substring
+ * then has a suffix starting with it, so a substring search becomes a prefix
+ * search on the suffixes instead of a scan of all words.
+ *
+ * The words are collected while the other stream is consumed (see
+ * {@link #collect(TokenStream)}), so it has to be consumed first.
+ */
+public final class SuffixTokenStream extends TokenStream {
+
+	/** Shortest suffix returned. Shorter substrings match too many words anyway */
+	public static final int MIN_LENGTH = 3;
+
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+	private final CharArraySet words = new CharArraySet(256, false);
+	private Iterator<Object> wordIterator;
+	private char[] word;
+	private int start; // of the next suffix
+
+	/**
+	 * @param input the stream to take the words from
+	 * @return stream returning the tokens of input
+	 */
+	public TokenStream collect(TokenStream input) {
+		return new TokenFilter(input) {
+			private final CharTermAttribute inputTermAtt = addAttribute(CharTermAttribute.class);
+
+			@Override
+			public boolean incrementToken() throws IOException {
+				if (!input.incrementToken())
+					return false;
+
+				if (inputTermAtt.length() >= MIN_LENGTH
+						&& !words.contains(inputTermAtt.buffer(), 0, inputTermAtt.length()))
+					words.add(inputTermAtt.toString());
+
+				return true;
+			}
+		};
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		while (word == null || word.length - start < MIN_LENGTH) {
+			if (!wordIterator.hasNext())
+				return false;
+
+			word = (char[]) wordIterator.next();
+			start = 0;
+		}
+
+		clearAttributes();
+		termAtt.copyBuffer(word, start, word.length - start);
+		start++;
+
+		return true;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		wordIterator = words.iterator();
+		word = null;
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2009 Andrejs Jermakovics.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Andrejs Jermakovics - initial implementation
+ */
+package com.tlcsdm.eclipse.instasearch.indexing.tokenizers;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Splits words into their parts in a single pass over the term buffer:
+ * <ol>
+ * <li>at characters that don't form identifiers in code, keeping only the
+ * parts</li>
+ * <li>at dots and hyphens (all.package.names, hyphen-separated-words), keeping
+ * the word and its parts</li>
+ * <li>at underscores and camel case (CamelCaseIdentifiers, CONSTANT_NAMES),
+ * keeping the word and its parts</li>
+ * </ol>
+ *
+ * The parts are returned at the position of the word and with its offsets. No
+ * objects are created per token, parts are kept as ranges of a reused buffer.
+ */
+public class WordPartTokenizer extends TokenFilter {
+
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final PositionIncrementAttribute posAtt = addAttribute(PositionIncrementAttribute.class);
+
+	private char[] buffer = new char[64]; // copy of the input term
+	private int[] parts = new int[32]; // start and end of each part in the buffer
+	private int partCount;
+	private int nextPart;
+
+	public WordPartTokenizer(TokenStream in) {
+		super(in);
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (nextPart < partCount) {
+			applyPart(nextPart++);
+			posAtt.setPositionIncrement(0);
+			return true;
+		}
+
+		if (!input.incrementToken())
+			return false;
+
+		int length = termAtt.length();
+		buffer = ArrayUtil.grow(buffer, length);
+		System.arraycopy(termAtt.buffer(), 0, buffer, 0, length);
+
+		partCount = 0;
+		nextPart = 1;
+		splitWords(length);
+
+		applyPart(0); // the first part keeps the position increment of the input
+		return true;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		partCount = 0;
+		nextPart = 0;
+	}
+
+	private void applyPart(int part) {
+		int start = parts[2 * part];
+		int end = parts[2 * part + 1];
+		termAtt.copyBuffer(buffer, start, end - start);
+	}
+
+	private void addPart(int start, int end) {
+		parts = ArrayUtil.grow(parts, 2 * partCount + 2);
+		parts[2 * partCount] = start;
+		parts[2 * partCount + 1] = end;
+		partCount++;
+	}
+
+	private void splitWords(int length) {
+		if (!isSplit(0, length, WORD_SEPARATOR)) {
+			addWord(0, length);
+			return;
+		}
+
+		int start = 0;
+		for (int i = 0; i <= length; i++) {
+			if (i == length || isSeparator(buffer[i], WORD_SEPARATOR)) {
+				if (start < i)
+					addWord(start, i);
+				start = i + 1;
+			}
+		}
+	}
+
+	private void addWord(int start, int end) {
+		addPart(start, end);
+		addCamelCaseParts(start, end);
+
+		if (!isSplit(start, end, DOT_SEPARATOR))
+			return;
+
+		int partStart = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || isSeparator(buffer[i], DOT_SEPARATOR)) {
+				if (partStart < i) {
+					addPart(partStart, i);
+					addCamelCaseParts(partStart, i);
+				}
+				partStart = i + 1;
+			}
+		}
+	}
+
+	private void addCamelCaseParts(int start, int end) {
+		if (!isCamelCaseSplit(start, end))
+			return;
+
+		int partStart = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || buffer[i] == '_') {
+				if (partStart < i)
+					addPart(partStart, i);
+				partStart = i + 1;
+			} else if (isCamelCaseBoundary(start, end, i)) {
+				if (partStart < i)
+					addPart(partStart, i);
+				partStart = i;
+			}
+		}
+	}
+
+	/**
+	 * A word is split if a separator is followed by a part. Leading separators
+	 * count, trailing ones don't
+	 */
+	private boolean isSplit(int start, int end, int separatorType) {
+		boolean separatorSeen = false;
+
+		for (int i = start; i < end; i++) {
+			if (isSeparator(buffer[i], separatorType))
+				separatorSeen = true;
+			else if (separatorSeen)
+				return true;
+		}
+
+		return false;
+	}
+
+	private boolean isCamelCaseSplit(int start, int end) {
+		boolean separatorSeen = false;
+
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == '_')
+				separatorSeen = true;
+			else if (separatorSeen || isCamelCaseBoundary(start, end, i))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return whether a new part starts at i, as in aB or Ab (also at the start
+	 *         of the word)
+	 */
+	private boolean isCamelCaseBoundary(int start, int end, int i) {
+		if (!isUpperCase(buffer[i]))
+			return false;
+
+		return (i + 1 < end && isLowerCase(buffer[i + 1])) || (i > start && isLowerCase(buffer[i - 1]));
+	}
+
+	private static final int WORD_SEPARATOR = 0;
+	private static final int DOT_SEPARATOR = 1;
+
+	private static boolean isSeparator(char c, int separatorType) {
+		if (separatorType == DOT_SEPARATOR)
+			return c == '.' || c == '-';
+
+		return !isWordChar(c);
+	}
+
+	private static boolean isWordChar(char c) {
+		return isLowerCase(c) || isUpperCase(c) || (c >= '0' && c <= '9') || (c >= '\u00E0' && c <= '\u00FF')
+				|| c == '_' || c == '\'' || c == '.' || c == '-';
+	}
+
+	private static boolean isLowerCase(char c) {
+		return c >= 'a' && c <= 'z';
+	}
+
+	private static boolean isUpperCase(char c) {
+		return c >= 'A' && c <= 'Z';
+	}
+}
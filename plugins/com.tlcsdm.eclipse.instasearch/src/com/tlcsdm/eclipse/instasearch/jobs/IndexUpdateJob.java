@@ -15,10 +15,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
@@ -32,6 +34,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.ui.PlatformUI;
@@ -47,18 +51,30 @@ import com.tlcsdm.eclipse.instasearch.ui.InstaSearchUI;
 import com.tlcsdm.eclipse.instasearch.ui.ShowExceptionAction;
 
 /**
- * Workspace job that periodically updates the index
+ * Workspace job that updates the index when files change. A burst of changes
+ * (saving several files, a refresh) is indexed once no more changes come in for
+ * a moment. Running builds also postpone the update, but changes wait at most
+ * the update interval
  */
-public class IndexUpdateJob extends WorkspaceJob
-		implements SynchronousBundleListener, IResourceChangeListener, IPropertyChangeListener {
+public class IndexUpdateJob extends WorkspaceJob implements SynchronousBundleListener, IResourceChangeListener,
+		IPropertyChangeListener, WorkspaceIndexer.JarChangeListener {
 
 	private WorkspaceIndexer indexer;
 	private IndexChangeListener indexChangeListener;
 
 	private Map<IResource, Integer> changedResources = new ConcurrentHashMap<IResource, Integer>(); // changed by
 																									// several threads
+	private Set<String> changedJars = ConcurrentHashMap.newKeySet(); // reported by the indexer
 	private boolean searchViewVisible = false;
 
+	/** Changes are indexed once no more changes came in for this long (ms) */
+	private static final long QUIET_DELAY = 1000;
+
+	private volatile long firstChangeTime; // of the changes not indexed yet
+	private volatile long lastChangeTime;
+	private volatile boolean updateNow; // without waiting for the changes to settle
+	private long retryDelay = QUIET_DELAY; // after a failed update, doubled with each failure
+
 	/**
 	 * @param indexer
 	 * @param indexChangeListener
@@ -76,6 +92,8 @@ public class IndexUpdateJob extends WorkspaceJob
 			InstaSearchPlugin.getDefault().getBundle().getBundleContext().addBundleListener(this); // listen to plugin
 																									// stopping
 
+		indexer.setJarChangeListener(this); // classpath changes
+
 		setRule(indexer);
 
 		setPriority(DECORATE);
@@ -92,8 +110,12 @@ public class IndexUpdateJob extends WorkspaceJob
 			if (indexer.isIndexed()) {
 				if (event.getType() == IResourceChangeEvent.POST_CHANGE) {
 					IResourceDelta delta = event.getDelta();
+					ResourceVisitor visitor = new ResourceVisitor();
+
+					delta.accept(visitor, false);
 
-					delta.accept(createResourceVisitor(), false);
+					if (visitor.changed)
+						onChange();
 				}
 				// else if( event.getResource().getType() == IResource.PROJECT ) //
 				// CLOSE,DELETE,REFRESH events for project
@@ -104,30 +126,98 @@ public class IndexUpdateJob extends WorkspaceJob
 		}
 	}
 
-	private IResourceDeltaVisitor createResourceVisitor() {
-		return new IResourceDeltaVisitor() {
-			public boolean visit(IResourceDelta delta) throws CoreException {
-				IResource resource = delta.getResource();
+	/**
+	 * Collects the changed files and tells whether there were any
+	 */
+	private class ResourceVisitor implements IResourceDeltaVisitor {
+		boolean changed;
 
-				if (resource.getType() == IResource.FILE) {
-					IFile file = (IFile) resource;
+		public boolean visit(IResourceDelta delta) throws CoreException {
+			IResource resource = delta.getResource();
 
-					if (indexer.isIndexable(file)) {
-						changedResources.put(file, file.getType());
-					}
+			if (resource.getType() == IResource.FILE) {
+				IFile file = (IFile) resource;
 
-				} else if (resource.getType() == IResource.FOLDER) {
-					if (delta.getFlags() == IResourceDelta.DERIVED_CHANGED) { // we must skip derived resources
-						changedResources.put(resource, resource.getType());
-					}
+				if (indexer.isIndexable(file)) {
+					changedResources.put(file, file.getType());
+					changed = true;
 				}
 
-				// else if(resource.getType() == IResource.PROJECT )
-				// System.out.println("Project change " + resource.toString());
-
-				return true;
+			} else if (resource.getType() == IResource.FOLDER) {
+				if (delta.getFlags() == IResourceDelta.DERIVED_CHANGED) { // we must skip derived resources
+					changedResources.put(resource, resource.getType());
+					changed = true;
+				}
+			} else if (resource.getType() == IResource.PROJECT) {
+				if (delta.getKind() == IResourceDelta.REMOVED || (delta.getFlags() & IResourceDelta.OPEN) != 0) {
+					changedResources.put(resource, resource.getType()); // closed, opened or deleted
+					changed = true;
+					return false; // the whole project is re-indexed
+				}
 			}
-		};
+
+			return true;
+		}
+	}
+
+	/**
+	 * Queues a JAR whose sources need to be re-indexed, instead of re-building the
+	 * whole index
+	 */
+	public void onJarChange(String jarName) {
+		changedJars.add(jarName);
+		onChange();
+	}
+
+	/**
+	 * Records the time of a change and schedules the update if it isn't already
+	 */
+	private void onChange() {
+		long now = System.currentTimeMillis();
+
+		if (firstChangeTime == 0)
+			firstChangeTime = now;
+		lastChangeTime = now;
+
+		if (InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_UPDATE_ENABLED))
+			schedule(QUIET_DELAY); // no effect if already scheduled, the job checks the delay itself
+	}
+
+	/**
+	 * Updates the index with the changes right away
+	 */
+	public void updateNow() {
+		updateNow = true;
+		cancel();
+		schedule();
+	}
+
+	/**
+	 * @return how long to wait before indexing the changes. Waits until no
+	 *         changes came in for {@link #QUIET_DELAY} and no build is running,
+	 *         but not longer than the update interval since the first change
+	 */
+	private long getUpdateDelay() {
+		long now = System.currentTimeMillis();
+		long maxDelay = Math.max(0, InstaSearchPlugin.getIntPref(PreferenceConstants.P_INDEX_UPDATE_INTERVAL));
+		long overdue = firstChangeTime + maxDelay - now;
+
+		if (overdue <= 0)
+			return 0;
+
+		long quiet = lastChangeTime + QUIET_DELAY - now;
+
+		if (quiet <= 0 && !isBuilding())
+			return 0;
+
+		return Math.min((quiet > 0) ? quiet : QUIET_DELAY, overdue);
+	}
+
+	private static boolean isBuilding() {
+		IJobManager jobManager = Job.getJobManager();
+
+		return jobManager.find(ResourcesPlugin.FAMILY_AUTO_BUILD).length > 0
+				|| jobManager.find(ResourcesPlugin.FAMILY_MANUAL_BUILD).length > 0;
 	}
 
 	public void bundleChanged(BundleEvent event) {
@@ -150,13 +240,17 @@ public class IndexUpdateJob extends WorkspaceJob
 		if (InstaSearchPlugin.getDefault() == null || monitor.isCanceled()) // no plugin (stopped)
 			return Status.CANCEL_STATUS;
 
-		int indexUpdateInterval = InstaSearchPlugin.getIntPref(PreferenceConstants.P_INDEX_UPDATE_INTERVAL);
 		boolean indexUpdateEnabled = InstaSearchPlugin.getBoolPref(PreferenceConstants.P_INDEX_UPDATE_ENABLED);
+		boolean immediate = updateNow;
+		updateNow = false;
 
-		if (!indexUpdateEnabled) {
+		if (!indexUpdateEnabled && !immediate) {
 			return Status.CANCEL_STATUS;
 		}
 
+		if (changedResources.isEmpty() && changedJars.isEmpty()) // nothing to do until the next change
+			return Status.OK_STATUS;
+
 		boolean indexed = false;
 
 		try {
@@ -165,12 +259,16 @@ public class IndexUpdateJob extends WorkspaceJob
 			InstaSearchPlugin.log(e1);
 		}
 
-		if ((!indexed || changedResources.isEmpty()) && !monitor.isCanceled()) { // not indexed or still indexing
-			schedule(indexUpdateInterval); // check later
-			return Status.CANCEL_STATUS;
+		long delay = immediate ? 0 : getUpdateDelay();
+
+		if (!indexed || delay > 0) { // still indexing or changes not settled yet
+			schedule(indexed ? delay : QUIET_DELAY); // check later
+			return Status.OK_STATUS;
 		}
 
-		monitor.beginTask("Updating Search Index", changedResources.size());
+		firstChangeTime = 0; // changes from now on are the next batch
+
+		monitor.beginTask("Updating Search Index", changedResources.size() + changedJars.size());
 		IStatus returnStatus = Status.OK_STATUS;
 
 		try {
@@ -183,15 +281,27 @@ public class IndexUpdateJob extends WorkspaceJob
 					indexer.updateFile((IFile) resource);
 				else if (resource.getType() == IResource.FOLDER) {
 					indexer.updateFolder((IFolder) resource, monitor);
+				} else if (resource.getType() == IResource.PROJECT) {
+					indexer.updateProject((IProject) resource, monitor);
 				}
-				// else if( resource.getType() == IResource.PROJECT )
-				// indexer.updateProject((IProject)resource);
 
 				iterator.remove();
 
 				monitor.worked(1);
 			}
 
+			for (Iterator<String> iterator = changedJars.iterator(); iterator.hasNext() && !monitor.isCanceled();) {
+				String jarName = iterator.next();
+				monitor.subTask(jarName);
+
+				indexer.updateJar(jarName, monitor);
+
+				iterator.remove();
+
+				monitor.worked(1);
+			}
+
+			indexer.commit(); // single commit for the whole batch
 			indexChangeListener.onIndexUpdate();
 
 			PlatformUI.getWorkbench().getDisplay().syncExec(new Runnable() {
@@ -201,8 +311,11 @@ public class IndexUpdateJob extends WorkspaceJob
 				}
 			});
 
-			if (!searchViewVisible) { // don't optimize when might be searching
-				indexer.optimizeIndex();
+			retryDelay = QUIET_DELAY;
+
+			if (!searchViewVisible) { // don't merge when might be searching
+				if (indexer.compactIndex())
+					InstaSearchPlugin.debug("Compacted index", indexer.getMergeStats());
 			}
 
 			monitor.done();
@@ -213,11 +326,13 @@ public class IndexUpdateJob extends WorkspaceJob
 			setProperty(IProgressConstants.ACTION_PROPERTY, new ShowExceptionAction(e, "Error Updating Index"));
 			InstaSearchPlugin.log(e);
 
-			returnStatus = Status.CANCEL_STATUS;
-		}
+			// changes not indexed yet are still queued, try again but less often each time
+			schedule(retryDelay);
+			long maxDelay = Math.max(QUIET_DELAY,
+					InstaSearchPlugin.getIntPref(PreferenceConstants.P_INDEX_UPDATE_INTERVAL));
+			retryDelay = Math.min(2 * retryDelay, maxDelay);
 
-		if ((!monitor.isCanceled()) && (indexUpdateEnabled)) {
-			schedule(indexUpdateInterval);
+			returnStatus = Status.CANCEL_STATUS;
 		}
 
 		return returnStatus;
@@ -246,17 +361,18 @@ public class IndexUpdateJob extends WorkspaceJob
 					continue;
 
 				IResource res = root.findMember(path);
-				if (res != null)
+				if (res != null) {
 					changedResources.put(res, res.getType());// mark excluded as changed for re-indexing
+					onChange();
+				}
 			}
 		} else if (PreferenceConstants.P_INDEX_UPDATE_ENABLED.equals(prop)) {
 			boolean enableFlag = (Boolean) event.getNewValue();
 
-			if (enableFlag) {
-				int indexUpdateInterval = InstaSearchPlugin.getIntPref(PreferenceConstants.P_INDEX_UPDATE_INTERVAL);
+			if (enableFlag && !(changedResources.isEmpty() && changedJars.isEmpty())) {
 				// cancel and reschedule job
 				cancel();
-				schedule(indexUpdateInterval);
+				schedule(QUIET_DELAY);
 			}
 		}
 	}
@@ -25,6 +25,7 @@ import com.tlcsdm.eclipse.instasearch.ui.ShowExceptionAction;
 public class IndexingJob extends WorkspaceJob {
 
 	private WorkspaceIndexer indexer;
+	private boolean rebuild = true;
 
 	public IndexingJob(WorkspaceIndexer indexer) {
 		super("InstaSearch Indexing");
@@ -38,10 +39,21 @@ public class IndexingJob extends WorkspaceJob {
 		setProperty(IProgressConstants.NO_IMMEDIATE_ERROR_PROMPT_PROPERTY, Boolean.TRUE);
 	}
 
+	/**
+	 * @param rebuild whether to rebuild the index from scratch or only re-index
+	 *                files that changed since they were indexed
+	 */
+	public void setRebuild(boolean rebuild) {
+		this.rebuild = rebuild;
+	}
+
 	@Override
 	public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
 		try {
-			indexer.createIndex(InstaSearchPlugin.getWorkspaceRoot(), monitor);
+			if (rebuild)
+				indexer.createIndex(InstaSearchPlugin.getWorkspaceRoot(), monitor);
+			else
+				indexer.syncIndex(InstaSearchPlugin.getWorkspaceRoot(), monitor);
 
 		} catch (Exception e) {
 
@@ -93,15 +93,43 @@ public class InstaSearchPreferencePage extends FieldEditorPreferencePage impleme
 		addField(indexJars);
 		indexJars.setEnabled(false, getFieldEditorParent());
 
+		BooleanFieldEditor jarIndexCache = new BooleanFieldEditor(PreferenceConstants.P_JAR_INDEX_CACHE,
+				"Share indexed JAR Source Attachements between workspaces (in ~/.instasearch)",
+				getFieldEditorParent());
+		addField(jarIndexCache);
+		jarIndexCache.setEnabled(false, getFieldEditorParent());
+
 		if (InstaSearchPlugin.getInstaSearch() != null
-				&& InstaSearchPlugin.getInstaSearch().getIndexer() instanceof WorkspaceIndexerJDT)
+				&& InstaSearchPlugin.getInstaSearch().getIndexer() instanceof WorkspaceIndexerJDT) {
 			indexJars.setEnabled(true, getFieldEditorParent());
+			jarIndexCache.setEnabled(true, getFieldEditorParent());
+		}
+
+		IntegerFieldEditor indexingThreads = new IntegerFieldEditor(PreferenceConstants.P_INDEXING_THREADS,
+				"Indexing threads", getFieldEditorParent());
+		indexingThreads.setValidRange(1, 64);
+		addField(indexingThreads);
+
+		addBoolField(PreferenceConstants.P_PRELOAD_INDEX, "Preload index into memory for faster first searches");
+
+		addBoolField(PreferenceConstants.P_INDEX_SUFFIXES,
+				"Index word suffixes for faster similar matches (larger index, requires to re-build the index)");
+
+		addBoolField(PreferenceConstants.P_INDEX_PER_PROJECT,
+				"Separate index for each project, faster project updates (requires to re-build the index)");
 
 		addBoolField(PreferenceConstants.P_FUZZY_SEARCH_AUTO, "Find similar matches when no exact matches found");
 
+		addBoolField(PreferenceConstants.P_PARALLEL_SEARCH, "Search for similar matches in parallel");
+
+		IntegerFieldEditor searchThreads = new IntegerFieldEditor(PreferenceConstants.P_SEARCH_THREADS,
+				"Search threads", getFieldEditorParent());
+		searchThreads.setValidRange(1, 64);
+		addField(searchThreads);
+
 		periodicReindexEnabled = addBoolField(PreferenceConstants.P_INDEX_UPDATE_ENABLED, "Enable Automatic-Reindex");
 		periodicReindexInterval = new IntegerFieldEditor(PreferenceConstants.P_INDEX_UPDATE_INTERVAL,
-				"Automatic Reindex interval (ms)", getFieldEditorParent());
+				"Maximum Reindex delay (ms)", getFieldEditorParent());
 		periodicReindexInterval.setValidRange(0, Integer.MAX_VALUE);
 		addField(periodicReindexInterval);
 
@@ -171,7 +199,9 @@ public class InstaSearchPreferencePage extends FieldEditorPreferencePage impleme
 					|| PreferenceConstants.P_EXCLUDE_DIRS.equals(field.getPreferenceName())
 					|| PreferenceConstants.P_INDEX_EMPTY_EXTENSION.equals(field.getPreferenceName()))
 				setMessage("Rebuilding of index is recommended", INFORMATION);
-			else if (PreferenceConstants.P_INDEX_ARCHIVES.equals(field.getPreferenceName()))
+			else if (PreferenceConstants.P_INDEX_ARCHIVES.equals(field.getPreferenceName())
+					|| PreferenceConstants.P_INDEX_SUFFIXES.equals(field.getPreferenceName())
+					|| PreferenceConstants.P_INDEX_PER_PROJECT.equals(field.getPreferenceName()))
 				setMessage("Rebuilding of index is required", INFORMATION);
 		}
 	}
@@ -17,13 +17,20 @@ package com.tlcsdm.eclipse.instasearch.prefs;
 public class PreferenceConstants {
 	// Indexing
 	public static final String P_INDEX_ARCHIVES = "indexArchives";
+	public static final String P_JAR_INDEX_CACHE = "jarIndexCache";
 	public static final String P_INDEXABLE_EXTENSIONS = "indexableExtensions";
 	public static final String P_INDEX_EMPTY_EXTENSION = "indexEmptyExtension";
 	public static final String P_EXCLUDE_DIRS = "excludedFolders";
+	public static final String P_INDEXING_THREADS = "indexingThreads";
+	public static final String P_PRELOAD_INDEX = "preloadIndex";
+	public static final String P_INDEX_SUFFIXES = "indexSuffixes";
+	public static final String P_INDEX_PER_PROJECT = "indexPerProject";
 
 	// Searching
 	public static final String P_SEARCH_EXTENSIONS = "searchExtensions";
 	public static final String P_FUZZY_SEARCH_AUTO = "fuzzySearchAuto";
+	public static final String P_PARALLEL_SEARCH = "parallelSearch";
+	public static final String P_SEARCH_THREADS = "searchThreads";
 	public static final String P_INCREMENTAL_SEARCH = "incrementalSearch";
 
 	// Appearance
@@ -41,8 +41,11 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		IPreferenceStore store = InstaSearchPlugin.getDefault().getPreferenceStore();
 		store.setDefault(PreferenceConstants.P_SHOW_MATCH_COUNT, true);
 		store.setDefault(PreferenceConstants.P_INDEX_ARCHIVES, false);
+		store.setDefault(PreferenceConstants.P_JAR_INDEX_CACHE, true);
 		store.setDefault(PreferenceConstants.P_INDEX_EMPTY_EXTENSION, false);
 		store.setDefault(PreferenceConstants.P_FUZZY_SEARCH_AUTO, true);
+		store.setDefault(PreferenceConstants.P_PARALLEL_SEARCH, false);
+		store.setDefault(PreferenceConstants.P_SEARCH_THREADS, getDefaultSearchThreads());
 		store.setDefault(PreferenceConstants.P_SHOW_FULL_PATH, true);
 		store.setDefault(PreferenceConstants.P_DIALOG_ON_SHORTCUT, false);
 		store.setDefault(PreferenceConstants.P_INCREMENTAL_SEARCH, true);
@@ -53,6 +56,10 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		store.setDefault(PreferenceConstants.P_TYPING_SEARCH_DELAY, 200);
 		store.setDefault(PreferenceConstants.P_INDEX_UPDATE_INTERVAL, 60000);
 		store.setDefault(PreferenceConstants.P_INDEX_UPDATE_ENABLED, true);
+		store.setDefault(PreferenceConstants.P_INDEXING_THREADS, getDefaultIndexingThreads());
+		store.setDefault(PreferenceConstants.P_PRELOAD_INDEX, false);
+		store.setDefault(PreferenceConstants.P_INDEX_SUFFIXES, true);
+		store.setDefault(PreferenceConstants.P_INDEX_PER_PROJECT, false);
 
 		String extensions = getIndexableExtensions();
 		store.setDefault(PreferenceConstants.P_INDEXABLE_EXTENSIONS, extensions);
@@ -60,6 +67,28 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		store.setDefault(PreferenceConstants.P_EXCLUDE_DIRS, "");
 	}
 
+	/**
+	 * Leave one core for the UI, use at most 8 threads since indexing is also
+	 * bound by disk reads
+	 * 
+	 * @return default number of indexing threads
+	 */
+	private static int getDefaultIndexingThreads() {
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		return Math.max(1, Math.min(8, processors - 1));
+	}
+
+	/**
+	 * A query is waited for, so it can use all cores. At most 8 since small
+	 * slices don't pay off
+	 * 
+	 * @return default number of threads searching for one query
+	 */
+	private static int getDefaultSearchThreads() {
+		return Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	}
+
 	/**
 	 * Get extensions that Eclipse knows of and the default ones
 	 * 
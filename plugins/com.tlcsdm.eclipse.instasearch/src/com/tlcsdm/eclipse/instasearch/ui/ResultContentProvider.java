@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -29,6 +30,7 @@ import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.search.ui.text.Match;
@@ -38,6 +40,7 @@ import com.tlcsdm.eclipse.instasearch.InstaSearch;
 import com.tlcsdm.eclipse.instasearch.InstaSearchPlugin;
 import com.tlcsdm.eclipse.instasearch.indexing.Field;
 import com.tlcsdm.eclipse.instasearch.indexing.SearchQuery;
+import com.tlcsdm.eclipse.instasearch.indexing.FacetCounts;
 import com.tlcsdm.eclipse.instasearch.indexing.SearchResult;
 import com.tlcsdm.eclipse.instasearch.indexing.SearchResultDoc;
 import com.tlcsdm.eclipse.instasearch.indexing.Searcher;
@@ -54,6 +57,7 @@ class ResultContentProvider implements ITreeContentProvider {
 	public static final double MAX_LINE_SIMILARITY = 0.9; // if above that, only one of the similar lines is kept
 	public static final int MAX_LINES_TO_PROCESS = 5000; // max nr of lines to read from files (prevent slowdown on huge
 															// files)
+	private static final int MAX_PROPOSALS = 100; // completions shown while typing
 
 	private WorkspaceIndexer indexer;
 	private Searcher searcher;
@@ -68,6 +72,7 @@ class ResultContentProvider implements ITreeContentProvider {
 	private SearchResultDoc cachedResultDoc;
 	private Object[] cachedChildren;
 	private int resultCount;
+	private FacetCounts facetCounts;
 
 	public ResultContentProvider() {
 		InstaSearch instaSearch = InstaSearchPlugin.getInstaSearch();
@@ -80,6 +85,7 @@ class ResultContentProvider implements ITreeContentProvider {
 		if (!(newSearch instanceof SearchQuery)) {
 			currentSearchQuery = null; // clear cache
 			cachedResults = null;
+			facetCounts = null;
 		}
 	}
 
@@ -109,6 +115,7 @@ class ResultContentProvider implements ITreeContentProvider {
 		SearchResult result = null;
 		cachedResults = null;
 		resultCount = 0;
+		facetCounts = null;
 		Object[] resultArray = null;
 
 		if (searchString != null) {
@@ -132,6 +139,7 @@ class ResultContentProvider implements ITreeContentProvider {
 				}
 
 				searchTerms = result.getSearchTerms();
+				facetCounts = result.getFacetCounts();
 
 			} catch (Exception e) {
 				InstaSearchPlugin.log(e);
@@ -184,6 +192,15 @@ class ResultContentProvider implements ITreeContentProvider {
 		return resultCount;
 	}
 
+	/**
+	 * Matches of the last search per project, extension and jar
+	 * 
+	 * @return facet counts or null if nothing was found
+	 */
+	public FacetCounts getFacetCounts() {
+		return facetCounts;
+	}
+
 	/**
 	 * Returns last search result elements. Includes search result docs and
 	 * additional action entries (eg More results)
@@ -232,7 +249,9 @@ class ResultContentProvider implements ITreeContentProvider {
 	}
 
 	/**
-	 * Returns matched lines
+	 * Returns matched lines. When limited, the term offsets stored in the index
+	 * are used to analyze only the lines that contain matches. The whole file is
+	 * scanned if the index has no offsets or the file has changed since indexing.
 	 * 
 	 * @param doc
 	 * @param limit
@@ -246,7 +265,6 @@ class ResultContentProvider implements ITreeContentProvider {
 
 		int maxMatches = InstaSearchPlugin.getIntPref(PreferenceConstants.P_SHOWN_LINES_COUNT);
 		List<MatchLine> matchedLines = new ArrayList<MatchLine>();
-		int matchCount = doc.getMatchCount();
 		String searchString = currentSearchQuery.getSearchString().toLowerCase(Locale.ENGLISH);
 
 		IStorage f = getStorage(doc);
@@ -256,64 +274,187 @@ class ResultContentProvider implements ITreeContentProvider {
 			return null;
 		}
 
-		InputStream fileInputStream;
+		int[] termOffsets = null;
+
+		if (limit && !isModifiedSinceIndexing(doc, f))
+			termOffsets = doc.getTermOffsets(searchTerms.keySet());
+
+		if (termOffsets != null && termOffsets.length > 0) {
+			InputStream fileInputStream = getContents(f);
+			if (fileInputStream == null)
+				return null;
+
+			try (Reader reader = new InputStreamReader(fileInputStream)) {
+				readMatchedLines(reader, termOffsets, doc, searchString, matchedLines, callback);
+			}
+		}
+
+		if (matchedLines.isEmpty()) { // no offsets or they were outdated, go through all lines
+			InputStream fileInputStream = getContents(f);
+			if (fileInputStream == null)
+				return null;
+
+			try (LineNumberReader lineReader = new LineNumberReader(new InputStreamReader(fileInputStream))) {
+				readAllLines(lineReader, doc, limit, searchString, matchedLines, callback);
+			}
+		}
+
+		if (limit && matchedLines.size() > maxMatches) {
+			matchedLines = getTopMatchLines(maxMatches, matchedLines); // return TOP N lines
+			return matchedLines;
+
+		} else
+			return matchedLines;
+	}
 
+	private static InputStream getContents(IStorage f) throws CoreException {
 		if (f instanceof IFile file) {
 			if (!file.exists())
 				return null;
-			fileInputStream = file.getContents(true);
-		} else {
-			fileInputStream = f.getContents();
+			return file.getContents(true);
 		}
 
-		try (LineNumberReader lineReader = new LineNumberReader(new InputStreamReader(fileInputStream))) {
-			String line;
-
-			// Read through file one line at a time
-			while ((line = lineReader.readLine()) != null) {
+		return f.getContents();
+	}
 
-				if (callback != null && callback.isCanceled())
-					break;
+	private static boolean isModifiedSinceIndexing(SearchResultDoc doc, IStorage f) {
+		if (f instanceof IFile file)
+			return file.getLocalTimeStamp() != doc.getModificationStamp();
 
-				if (line.isEmpty())
-					continue;
+		return false; // jar entries don't change
+	}
 
-				Map<String, List<Integer>> lineTerms = StorageIndexer.extractTextTerms(line);
-				if (lineTerms.isEmpty())
-					continue;
+	private void readAllLines(LineNumberReader lineReader, SearchResultDoc doc, boolean limit, String searchString,
+			List<MatchLine> matchedLines, MatchFindCallback callback) throws IOException {
+		int matchCount = doc.getMatchCount();
+		String line;
 
-				HashSet<String> matchedTerms = new HashSet<>(searchTerms.keySet()); // search terms that appear on
-																					// this line
-				matchedTerms.retainAll(lineTerms.keySet());
+		// Read through file one line at a time
+		while ((line = lineReader.readLine()) != null) {
 
-				if (matchedTerms.isEmpty() && matchCount != 0 && limit) // if have matches in general, but not on this
-																		// line, then skip
-					continue;
+			if (callback != null && callback.isCanceled())
+				break;
 
-				float[] lineTermScoreVector = doc.getTermScoreVector(lineTerms.keySet());
-				float[] matchedTermScoreVector = doc.getTermScoreVector(matchedTerms);
+			MatchLine matchLine = createMatchLine(doc, line, lineReader.getLineNumber(), limit, matchCount,
+					searchString);
 
-				MatchLine matchLine = new MatchLine(doc, line, lineReader.getLineNumber(), matchedTerms,
-						lineTermScoreVector, matchedTermScoreVector);
+			if (matchLine != null) {
 				matchedLines.add(matchLine);
 
-				addMatches(matchLine, lineTerms, matchedTerms, searchString);
 				if (callback != null)
 					callback.matchFound(matchLine);
+			}
+
+			if (lineReader.getLineNumber() > MAX_LINES_TO_PROCESS)
+				break;
+
+			// TODO: break if all current matches have high score (eg >0.9)
+		}
+	}
+
+	/**
+	 * Reads the file up to the last offset and analyzes only the lines that
+	 * contain one of the offsets. Line breaks are the same as for
+	 * {@link LineNumberReader}
+	 * 
+	 * @param reader
+	 * @param offsets    sorted character offsets of matched terms
+	 * @param doc
+	 * @param searchString
+	 * @param matchedLines
+	 * @param callback
+	 * @throws IOException
+	 */
+	private void readMatchedLines(Reader reader, int[] offsets, SearchResultDoc doc, String searchString,
+			List<MatchLine> matchedLines, MatchFindCallback callback) throws IOException {
+		char[] buffer = new char[8192];
+		StringBuilder line = new StringBuilder();
+		int lineNumber = 1, pos = 0, nextOffset = 0, processedLines = 0;
+		boolean prevCR = false;
+		int read;
+
+		while (nextOffset < offsets.length && (read = reader.read(buffer)) != -1) {
+
+			if (callback != null && callback.isCanceled())
+				return;
+
+			for (int i = 0; i < read && nextOffset < offsets.length; i++, pos++) {
+				char c = buffer[i];
+
+				if (c == '\n' && prevCR) { // \r\n
+					prevCR = false;
+					continue;
+				}
+
+				prevCR = (c == '\r');
+
+				if (c != '\n' && c != '\r') {
+					line.append(c);
+					continue;
+				}
+
+				if (offsets[nextOffset] < pos) { // line contains a match
+					addMatchLine(doc, line.toString(), lineNumber, offsets.length, searchString, matchedLines,
+							callback);
 
-				if (lineReader.getLineNumber() > MAX_LINES_TO_PROCESS)
-					break;
+					while (nextOffset < offsets.length && offsets[nextOffset] <= pos)
+						nextOffset++;
 
-				// TODO: break if all current matches have high score (eg >0.9)
+					if (++processedLines > MAX_LINES_TO_PROCESS)
+						return;
+				}
+
+				line.setLength(0);
+				lineNumber++;
 			}
 		}
 
-		if (limit && matchedLines.size() > maxMatches) {
-			matchedLines = getTopMatchLines(maxMatches, matchedLines); // return TOP N lines
-			return matchedLines;
+		if (nextOffset < offsets.length && line.length() > 0) // last line has no line break
+			addMatchLine(doc, line.toString(), lineNumber, offsets.length, searchString, matchedLines, callback);
+	}
 
-		} else
-			return matchedLines;
+	private void addMatchLine(SearchResultDoc doc, String line, int lineNumber, int matchCount, String searchString,
+			List<MatchLine> matchedLines, MatchFindCallback callback) throws IOException {
+		MatchLine matchLine = createMatchLine(doc, line, lineNumber, true, matchCount, searchString);
+
+		if (matchLine != null) {
+			matchedLines.add(matchLine);
+
+			if (callback != null)
+				callback.matchFound(matchLine);
+		}
+	}
+
+	/**
+	 * @return line with matches or null if the line should not be shown
+	 */
+	private MatchLine createMatchLine(SearchResultDoc doc, String line, int lineNumber, boolean limit,
+			int matchCount, String searchString) throws IOException {
+
+		if (line.isEmpty())
+			return null;
+
+		Map<String, List<Integer>> lineTerms = StorageIndexer.extractTextTerms(line);
+		if (lineTerms.isEmpty())
+			return null;
+
+		HashSet<String> matchedTerms = new HashSet<>(searchTerms.keySet()); // search terms that appear on
+																			// this line
+		matchedTerms.retainAll(lineTerms.keySet());
+
+		if (matchedTerms.isEmpty() && matchCount != 0 && limit) // if have matches in general, but not on this
+																// line, then skip
+			return null;
+
+		float[] lineTermScoreVector = doc.getTermScoreVector(lineTerms.keySet());
+		float[] matchedTermScoreVector = doc.getTermScoreVector(matchedTerms);
+
+		MatchLine matchLine = new MatchLine(doc, line, lineNumber, matchedTerms, lineTermScoreVector,
+				matchedTermScoreVector);
+
+		addMatches(matchLine, lineTerms, matchedTerms, searchString);
+
+		return matchLine;
 	}
 
 	private List<MatchLine> getTopMatchLines(int maxMatchLines, List<MatchLine> matchedLines) {
@@ -479,17 +620,7 @@ class ResultContentProvider implements ITreeContentProvider {
 	}
 
 	public List<String> getProposals(String prefix, Field field) throws IOException {
-		List<String> ucaseProposals = searcher.getProposals(prefix.toUpperCase(), field);
-
-		if (prefix.toUpperCase().equals(prefix.toLowerCase(Locale.ENGLISH)))
-			return ucaseProposals;
-
-		List<String> lcaseProposals = searcher.getProposals(prefix.toLowerCase(Locale.ENGLISH), field);
-
-		ucaseProposals.addAll(lcaseProposals);
-		Collections.sort(ucaseProposals, String.CASE_INSENSITIVE_ORDER);
-
-		return ucaseProposals;
+		return searcher.getProposals(prefix, field, MAX_PROPOSALS); // case insensitive, most frequent first
 	}
 
 	/**
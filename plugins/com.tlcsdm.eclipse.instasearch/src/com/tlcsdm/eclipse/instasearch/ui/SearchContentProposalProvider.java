@@ -15,11 +15,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.eclipse.jface.fieldassist.IContentProposal;
 import org.eclipse.jface.fieldassist.SimpleContentProposalProvider;
 
 import com.tlcsdm.eclipse.instasearch.InstaSearchPlugin;
+import com.tlcsdm.eclipse.instasearch.indexing.FacetCounts;
 import com.tlcsdm.eclipse.instasearch.indexing.Field;
 import com.tlcsdm.eclipse.instasearch.indexing.Searcher;
 import com.tlcsdm.eclipse.instasearch.indexing.querying.ModifiedTimeConverter;
@@ -123,6 +125,20 @@ class SearchContentProposalProvider extends SimpleContentProposalProvider {
 		return proposalNames;
 	}
 
+	/**
+	 * @param field
+	 * @return number of matches of the last search per field value, empty if the
+	 *         field values were not counted
+	 */
+	public Map<String, Integer> getFieldCounts(Field field) {
+		FacetCounts facetCounts = contentProvider.getFacetCounts();
+
+		if (facetCounts == null)
+			return Collections.emptyMap();
+
+		return facetCounts.getCounts(field);
+	}
+
 	private void addCurrentProjectProposal(String rest, String beforeCol, String prevProposal,
 			ArrayList<IContentProposal> proposals) {
 		if (InstaSearchUI.getActiveProject() != null) {
@@ -232,11 +232,15 @@ public class SearchViewControl implements DisposeListener {
 			dropdown.addSeparator();
 
 			List<String> proposals = proposalProvider.getFieldProposals(field, "");
+			Map<String, Integer> counts = proposalProvider.getFieldCounts(field); // matches of the current search
 			FilterChangeAction firstAction = null;
 
 			for (String proposal : proposals) {
 				FilterChangeAction action = addAction(dropdown, proposal);
 
+				if (!counts.isEmpty())
+					action.setText(proposal + " (" + counts.getOrDefault(proposal, 0) + ")");
+
 				if (firstAction == null)
 					firstAction = action;
 			}
@@ -268,7 +272,7 @@ public class SearchViewControl implements DisposeListener {
 			FilterChangeAction action = new FilterChangeAction(proposal, getImageDescriptor()) {
 				@Override
 				public void runAction() {
-					dropdown.getToolItem().setText(getText());
+					dropdown.getToolItem().setText(proposal); // the text may have the count
 					dropdown.getToolItem().setImage(getImage(proposal));
 					parent.layout(true, true);
 				}
@@ -14,11 +14,13 @@ package com.tlcsdm.eclipse.instasearch.indexing;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.runtime.CoreException;
 import org.junit.BeforeClass;
@@ -149,6 +151,37 @@ public class SearcherTest
 		assertFilesMatch("body css style", false, "file13.txt", "file14.txt");
 	}
 	
+	@Test
+	public void testSubstringSearches() throws Exception
+	{
+		assertFileMatches("file7.txt", "*riveLett*", false);
+
+		assertEquals(4, search("*topic*").size());
+	}
+
+	@Test
+	public void testFolderSearches() throws Exception
+	{
+		assertFileMatches("file18.txt", "dir:com", true);
+		assertFileMatches("file18.txt", "dir:\"src/com\"", true);
+		assertFileMatches("file18.txt", "dir:\"/path/src/\"", true);
+
+		assertEquals(1, search("dir:co*").size());
+		assertEquals(numDocs, search("dir:\"/path\"").size());
+	}
+
+	@Test
+	public void testProposals() throws Exception
+	{
+		List<String> proposals = searcher.getProposals("an", Field.CONTENTS, 2);
+		assertEquals("another", proposals.get(0)); // most frequent first
+		assertEquals(2, proposals.size());
+
+		proposals = searcher.getProposals("file", Field.NAME);
+		assertEquals(true, proposals.contains("FileWithoutExtension")); // case insensitive
+		assertEquals(true, proposals.contains("file10.txt"));
+	}
+
 	@Test
 	public void testModifiedDateSearches() throws Exception
 	{
@@ -161,6 +194,130 @@ public class SearcherTest
 		assertEquals(numDocs, found.size());
 	}
 	
+	@Test
+	public void testFacetCounts() throws Exception
+	{
+		SearchResult res = searcher.search(new SearchQuery("TOPIC", 1)); // counts all matches, not only returned
+		FacetCounts facetCounts = res.getFacetCounts();
+
+		assertEquals(1, res.getResultDocs().size());
+		assertEquals(2, facetCounts.getCount(Field.PROJ, "proj1"));
+		assertEquals(2, facetCounts.getCount(Field.PROJ, "proj three"));
+		assertEquals(4, facetCounts.getCount(Field.EXT, "txt"));
+		assertEquals(0, facetCounts.getCount(Field.EXT, "xml"));
+
+		SearchQuery filteredQuery = new SearchQuery("TOPIC", SearchQuery.UNLIMITED_RESULTS);
+		filteredQuery.setFilter(Collections.singletonMap(Field.PROJ, Collections.singleton("proj1")));
+		res = searcher.search(filteredQuery);
+		facetCounts = res.getFacetCounts();
+
+		assertEquals(2, res.getResultDocs().size());
+		assertEquals(2, facetCounts.getCount(Field.PROJ, "proj three")); // not narrowed by its own filter
+		assertEquals(2, facetCounts.getCount(Field.EXT, "txt"));
+	}
+	
+	@Test
+	public void testResultFields() throws Exception
+	{
+		SearchResultDoc doc = search("ext:xml").get(0);
+
+		assertEquals("/path/file4.xml", doc.getFilePath());
+		assertEquals("file4.xml", doc.getFileName());
+		assertEquals("xml", doc.getFileExtension());
+		assertEquals("proj2", doc.getProjectName());
+		assertEquals(false, doc.isInJar());
+		assertEquals(true, doc.getModificationStamp() > 0);
+		assertEquals("file4.xml", doc.getDoc().get(Field.NAME.toString())); // loaded lazily
+	}
+	
+	@Test
+	public void testTypedSearches() throws Exception
+	{
+		String[] typed = { "m", "ma", "mai", "main", "mainT", "main t", "main to", "main topic", "main topic ext:t",
+				"a", "an", "ano", "another", "another o", "another other", "another_other" };
+
+		for (String searchString : typed)
+		{
+			List<String> files = getFileNames(search(searchString)); // narrowed to the previous matches
+			searcher.onIndexReset(); // forget previous matches
+
+			assertEquals(searchString, getFileNames(search(searchString)), files);
+		}
+	}
+
+	@Test
+	public void testProjectShards() throws Exception
+	{
+		final StorageIndexer shardIndexer = new StorageIndexer() {
+			@Override
+			protected boolean isProjectShardsEnabled() {
+				return true;
+			}
+		};
+		Searcher shardSearcher = new Searcher(new Searcher.SearcherConfig() {
+			public boolean getBoolPref(String pref) {
+				return false;
+			}
+
+			public void log(Exception e) {
+				throw new RuntimeException(e);
+			}
+
+			public Directory getIndexDir() throws IOException {
+				return shardIndexer.getIndexDir();
+			}
+
+			public IndexWriter getIndexWriter() throws IOException {
+				return shardIndexer.getIndexWriter();
+			}
+
+			public List<IndexWriter> getShardWriters() throws IOException {
+				return shardIndexer.getShardWriters();
+			}
+		});
+
+		indexShardFile(shardIndexer, "/proj1/a.txt", "sharded contents", "proj1");
+		indexShardFile(shardIndexer, "/proj1/b.txt", "more sharded contents", "proj1");
+		indexShardFile(shardIndexer, "/proj2/c.txt", "sharded too", "proj2");
+		shardIndexer.commit();
+
+		SearchResult res = shardSearcher.search(new SearchQuery("sharded", SearchQuery.UNLIMITED_RESULTS));
+		assertEquals(3, res.getResultDocs().size());
+		assertEquals(2, res.getFacetCounts().getCount(Field.PROJ, "proj1"));
+
+		shardIndexer.deleteShard("proj1"); // dropped as a whole
+		indexShardFile(shardIndexer, "/proj3/d.txt", "sharded again", "proj3");
+		shardIndexer.commit();
+		shardSearcher.onIndexUpdate();
+
+		assertEquals(null, shardSearcher.search(new SearchQuery("contents", SearchQuery.UNLIMITED_RESULTS))); // no results
+		assertEquals(2, search(shardSearcher, "sharded").size());
+
+		shardSearcher.onIndexReset();
+		shardIndexer.close();
+	}
+
+	private static void indexShardFile(StorageIndexer shardIndexer, String path, String contents, String proj) throws Exception
+	{
+		shardIndexer.indexStorage(shardIndexer.getIndexWriter(proj), new TestStorage(path, contents), proj,
+				System.currentTimeMillis(), null);
+	}
+
+	private static List<SearchResultDoc> search(Searcher shardSearcher, String searchString) throws Exception
+	{
+		return shardSearcher.search(new SearchQuery(searchString, SearchQuery.UNLIMITED_RESULTS)).getResultDocs();
+	}
+
+	private static List<String> getFileNames(List<SearchResultDoc> docs)
+	{
+		List<String> fileNames = new ArrayList<String>();
+
+		for (SearchResultDoc doc : docs)
+			fileNames.add(doc.getFileName());
+
+		return fileNames;
+	}
+
 	private void assertFileMatches(String expectedFile, String searchString, String... otherFiles) throws Exception
 	{
 		List<SearchResultDoc> docs = search(searchString);
@@ -226,8 +383,9 @@ public class SearcherTest
 		indexFile(writer, "/path/file15.txt", "Assert.assertEquals(\"Setter\", expected (new MethodClassifier) is");
 		indexFile(writer, "/path/file16.txt", "class MethodClassifier() { Integer a = new Integer(1); String s = new String(); } ");
 		indexFile(writer, "/path/file17.txt", "MethodClassifier(); main() { class Different { static class B; } }");
+		indexFile(writer, "/path/src/com/file18.txt", "a nested file", "proj4");
 		
-		numDocs = writer.numDocs();
+		numDocs = writer.getDocStats().numDocs;
 		writer.close();
 	}
 